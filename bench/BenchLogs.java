@@ -0,0 +1,62 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Makes synthetic log files for the benchmarks. Files are made once per line count and kept in the temp folder,
+ * since making a 100M line file takes a while.
+ *
+ * Roughly 1 line in 100 is an ERROR with a timeout, 1 in 500 starts a short stack trace.
+ */
+class BenchLogs {
+    static final String LITERAL_QUERY = "timeout";
+    static final String REGEX_QUERY = "ERROR.*time(out)?";
+    private static final long SEED = 42;
+
+    private BenchLogs() {
+    }
+
+    /** Returns a log file with the specified number of lines, making it if needed. */
+    static File get(int lineCount) throws IOException {
+        File f = new File(System.getProperty("java.io.tmpdir"),"garfield-bench-"+lineCount+".log");
+        if(f.exists()) {
+            return f;
+        }
+        File tmp = new File(f.getPath()+".tmp");
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.S");
+        Random random = new Random(SEED);
+        long time = 1545000000000L;
+        try(BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp),StandardCharsets.UTF_8),1<<16)) {
+            int line = 0;
+            while(line < lineCount) {
+                time += random.nextInt(50);
+                final int kind = random.nextInt(500);
+                out.write(format.format(new Date(time)));
+                if(kind < 5) {
+                    out.write(" ERROR [worker-"+random.nextInt(16)+"] request "+random.nextInt(100000)+" failed with timeout\n");
+                    line++;
+                } else if(kind == 5) {
+                    out.write(" WARN  [worker-"+random.nextInt(16)+"] java.lang.IllegalStateException: bad state\n");
+                    line++;
+                    for(int i = 0; i < 8 && line < lineCount; i++, line++) {
+                        out.write("\tat com.example.Service.method"+i+"(Service.java:"+random.nextInt(500)+")\n");
+                    }
+                    continue;
+                } else {
+                    out.write(" INFO  [worker-"+random.nextInt(16)+"] user="+random.nextInt(100000)+" handled in "+random.nextInt(1000)+"ms\n");
+                    line++;
+                }
+            }
+        }
+        if(!tmp.renameTo(f)) {
+            throw new IOException("Unable to rename "+tmp+" to "+f);
+        }
+        return f;
+    }
+}
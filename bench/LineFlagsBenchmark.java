@@ -0,0 +1,67 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Throughput of the LineFlags calls a search and the display make for every line. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LineFlagsBenchmark {
+    private static final int FOUND = 2;
+    private static final int BOOKMARK = 4;
+
+    @Param({"10000","1000000","100000000"})
+    int lines;
+
+    private LineFlags flags;
+
+    @Setup(Level.Invocation)
+    public void makeFlags() {
+        flags = new LineFlags();
+        for(int line = 0; line < lines; line += 3) {
+            flags.set(line,FOUND);
+        }
+    }
+
+    /** Flag every line, like a search that matches everything. */
+    @Benchmark
+    public LineFlags setAll() {
+        for(int line = 0; line < lines; line++) {
+            flags.set(line,BOOKMARK);
+        }
+        return flags;
+    }
+
+    /** Clear the search results, like starting a new search. */
+    @Benchmark
+    public LineFlags resetAll() {
+        flags.reset(FOUND);
+        return flags;
+    }
+
+    /** Check every line, like drawing the whole file would. */
+    @Benchmark
+    public int isSetAll() {
+        int count = 0;
+        for(int line = 0; line < lines; line++) {
+            if(flags.isSet(line,FOUND)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
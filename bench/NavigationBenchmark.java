@@ -0,0 +1,60 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Cost of a single n/N or b/B keypress, from a random line. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NavigationBenchmark {
+    private static final int FLAG = 2;
+
+    @Param({"10000","1000000","100000000"})
+    int lines;
+
+    /** One line in this many is a match. */
+    @Param({"10","10000"})
+    int spacing;
+
+    private final MatchIndex matches = new MatchIndex();
+    private final LineFlags flags = new LineFlags();
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void makeMatches() {
+        for(int line = 0; line < lines; line += spacing) {
+            matches.add(line);
+            flags.set(line,FLAG);
+        }
+    }
+
+    @Benchmark
+    public int nextMatch() {
+        return matches.next(random.nextInt(lines));
+    }
+
+    @Benchmark
+    public int prevMatch() {
+        return matches.prev(random.nextInt(lines));
+    }
+
+    @Benchmark
+    public int nextFlaggedLine() {
+        return flags.nextSetLine(random.nextInt(lines),FLAG);
+    }
+}
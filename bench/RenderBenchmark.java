@@ -0,0 +1,71 @@
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of drawing one frame on a headless terminal. A scrolled frame changes every line, an idle frame changes
+ * nothing. The terminal calls per frame are reported as an extra counter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RenderBenchmark {
+    private static final int LINES = 1000000;
+    private static final int LAST_LINE = LINES-1000;
+
+    @Param({"80x25","200x60"})
+    String size;
+
+    private HeadlessTerminal terminal;
+    private Garfield viewer;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Calls {
+        public long terminalCalls;
+    }
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        final String[] dimensions = size.split("x");
+        terminal = new HeadlessTerminal(Integer.parseInt(dimensions[0]),Integer.parseInt(dimensions[1]));
+        viewer = new Garfield(BenchLogs.get(LINES).getPath(),terminal);
+        viewer.loadFile();
+        viewer.updateWindowSize();
+        viewer.updateDisplay();
+    }
+
+    @Benchmark
+    public void scrolledFrame(Calls calls) {
+        terminal.resetCallCount();
+        if(viewer.currentLineNum() > LAST_LINE) {
+            viewer.home();
+        }
+        viewer.scrollDown();
+        viewer.updateDisplay();
+        calls.terminalCalls += terminal.getCallCount();
+    }
+
+    @Benchmark
+    public void idleFrame(Calls calls) {
+        terminal.resetCallCount();
+        viewer.updateDisplay();
+        calls.terminalCalls += terminal.getCallCount();
+    }
+}
@@ -0,0 +1,52 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Searching the whole file, the way a '/' or '?' search does. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({"10000","1000000","100000000"})
+    int lines;
+
+    /** literal, literalIgnoreCase, regex or regexIgnoreCase. */
+    @Param({"literal","literalIgnoreCase","regex","regexIgnoreCase"})
+    String mode;
+
+    private MappedLineSource src;
+    private SearchEngine engine;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        src = new MappedLineSource(BenchLogs.get(lines));
+        final boolean regex = mode.startsWith("regex");
+        engine = new SearchEngine(regex ? BenchLogs.REGEX_QUERY : BenchLogs.LITERAL_QUERY,regex,mode.endsWith("IgnoreCase"));
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        src.close();
+    }
+
+    @Benchmark
+    public int search() {
+        return engine.search(src,0,src.lineCount()).size();
+    }
+}
@@ -0,0 +1,93 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Keeps track of where each log entry starts. An entry starts on a line that matches the start pattern, like a
+ * timestamp, and carries on until the next one, so a stack trace is part of the entry that logged it. The first
+ * line of the file always starts an entry.
+ *
+ * The start lines are kept in ascending order, so finding the entry a line belongs to is a binary search. The index
+ * is built by searching the lines with the start pattern, and only the new lines need searching when the file grows.
+ */
+public class BlockIndex {
+    /** Finds a date like "2018/12/12" or "2018-12-12" at the start of the line. */
+    public static final String DEFAULT_START_PATTERN = "^\\d\\d\\d\\d.\\d\\d.\\d\\d";
+
+    private final SearchEngine startPattern;
+    private final MatchIndex starts = new MatchIndex();
+
+    /**
+     * @param startPattern Regular expression that matches the first line of an entry.
+     * @throws PatternSyntaxException if the pattern isn't a valid regular expression.
+     */
+    public BlockIndex(String startPattern) throws PatternSyntaxException {
+        this.startPattern = new SearchEngine(startPattern,true,false);
+    }
+
+    /**
+     * Indexes lines fromLine up to but not including toLine. Anything already indexed from fromLine on is replaced,
+     * which is needed when the last line of the file was only partly written last time.
+     */
+    public void update(LineSource lines,int fromLine,int toLine) {
+        starts.removeFrom(fromLine);
+        if(fromLine == 0 && toLine > 0) {
+            starts.add(0);
+        }
+        IntList found = startPattern.search(lines,fromLine,toLine);
+        for(int i = 0; i < found.size(); i++) {
+            starts.add(found.get(i));
+        }
+    }
+
+    /** Number of entries. */
+    public int size() {
+        return starts.size();
+    }
+
+    /** The first line of the k'th entry. */
+    public int get(int k) {
+        return starts.get(k);
+    }
+
+    /** Which entry the line is part of, starting at 0. */
+    public int indexOf(int lineNum) {
+        return Math.max(0,starts.position(lineNum+1)-1);
+    }
+
+    /** The first line of the entry after the one lineNum is in, or -1 if it is in the last one. */
+    public int next(int lineNum) {
+        return starts.next(lineNum);
+    }
+
+    /** The closest entry start before lineNum, or -1 if there isn't one. */
+    public int prev(int lineNum) {
+        return starts.prev(lineNum);
+    }
+
+    /**
+     * Number of lines in the k'th entry.
+     *
+     * @param linesInFile Lines in the file, needed for the size of the last entry.
+     */
+    public int lineCount(int k,int linesInFile) {
+        final int end = k+1 < starts.size() ? starts.get(k+1) : linesInFile;
+        return end-starts.get(k);
+    }
+}
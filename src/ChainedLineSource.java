@@ -0,0 +1,146 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows several line sources one after the other, as if they were one file. Used when following a log that gets
+ * rotated: the old file stays where it is, and the new file carries on after it, so line numbers, bookmarks and
+ * search hits from before the rotation stay valid.
+ *
+ * Only the last source is updated, the ones before it are finished.
+ */
+public class ChainedLineSource implements LineSource {
+    private final List<LineSource> parts = new ArrayList<>();
+    private final IntList firstLines = new IntList();   //line number each part starts at
+
+    public ChainedLineSource(LineSource first) {
+        add(first);
+    }
+
+    /** Adds the next source. It is updated from now on, the one before it isn't. */
+    public void add(LineSource next) {
+        firstLines.add(parts.isEmpty() ? 0 : lineCount());
+        parts.add(next);
+    }
+
+    /** The source being added to. */
+    public LineSource last() {
+        return parts.get(parts.size()-1);
+    }
+
+    @Override
+    public int lineCount() {
+        return firstLines.last()+last().lineCount();
+    }
+
+    @Override
+    public String getLine(int lineNum) {
+        if(lineNum < 0 || lineNum >= lineCount()) {
+            throw new IndexOutOfBoundsException("Line "+lineNum+" of "+lineCount());
+        }
+        int part = firstLines.binarySearch(lineNum);
+        if(part < 0) {
+            part = -part-2;     //the part that starts before it
+        } else {
+            while(part+1 < firstLines.size() && firstLines.get(part+1) == lineNum) {
+                part++;         //skip parts without any lines
+            }
+        }
+        return parts.get(part).getLine(lineNum-firstLines.get(part));
+    }
+
+    @Override
+    public int maxLineLength() {
+        int max = 0;
+        for(LineSource part : parts) {
+            max = Math.max(max,part.maxLineLength());
+        }
+        return max;
+    }
+
+    @Override
+    public long heapBytes() {
+        long bytes = (long)firstLines.capacity()*Integer.BYTES;
+        for(LineSource part : parts) {
+            bytes += part.heapBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long sizeBytes() {
+        long size = 0;
+        for(LineSource part : parts) {
+            size += part.sizeBytes();
+        }
+        return size;
+    }
+
+    /** Lets each part search its own lines, so they can search their bytes. */
+    @Override
+    public IntList find(LiteralMatcher literal,int fromLine,int toLine) {
+        IntList hits = new IntList();
+        for(int part = 0; part < parts.size(); part++) {
+            final int first = firstLines.get(part);
+            final int end = part+1 < parts.size() ? firstLines.get(part+1) : lineCount();
+            final int from = Math.max(fromLine,first);
+            final int to = Math.min(toLine,end);
+            if(from < to) {
+                IntList partHits = parts.get(part).find(literal,from-first,to-first);
+                for(int i = 0; i < partHits.size(); i++) {
+                    hits.add(partHits.get(i)+first);
+                }
+            }
+        }
+        return hits;
+    }
+
+    @Override
+    public boolean update() throws IOException {
+        return last().update();
+    }
+
+    @Override
+    public boolean update(long maxBytes) throws IOException {
+        return last().update(maxBytes);
+    }
+
+    /** Only the last file is still written to. */
+    @Override
+    public boolean isTruncated() throws IOException {
+        return last().isTruncated();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for(LineSource part : parts) {
+            try {
+                part.close();
+            } catch(IOException e) {
+                error = e;
+            }
+        }
+        if(error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.util.Locale;
+
+/**
+ * Measures where the time goes, so a slow viewer can be explained. The last frame, load and search are kept for the
+ * overlay the 'd' key shows, and each one is also sent to Java Flight Recorder as an event:
+ *
+ *   garfield.Frame     time to draw the screen, and how many calls were sent to the terminal
+ *   garfield.Load      opening or reloading the file, how many bytes, and the heap used for the lines and flags
+ *   garfield.Search    time to search, how many lines, and how many matched
+ */
+public class Diagnostics {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final FlightEvent frameEvent = new FlightEvent("garfield.Frame","Frame",
+            "renderTime","Render Time",FlightEvent.NANOSECONDS,
+            "terminalCalls","Terminal Calls",FlightEvent.COUNT);
+    private final FlightEvent loadEvent = new FlightEvent("garfield.Load","Load",
+            "loadTime","Load Time",FlightEvent.NANOSECONDS,
+            "bytes","Bytes Read",FlightEvent.BYTES,
+            "reload","Reload",FlightEvent.COUNT,
+            "lineStoreHeap","Line Store Heap",FlightEvent.BYTES,
+            "lineFlagsHeap","Line Flags Heap",FlightEvent.BYTES);
+    private final FlightEvent searchEvent = new FlightEvent("garfield.Search","Search",
+            "searchTime","Search Time",FlightEvent.NANOSECONDS,
+            "lines","Lines Searched",FlightEvent.COUNT,
+            "hits","Lines Matched",FlightEvent.COUNT);
+
+    private long frameNanos;
+    private long frameCalls;
+    private long loadNanos;
+    private long loadBytes;
+    private long searchNanos;
+    private long searchLines;
+
+    /** A frame was drawn. */
+    public void frame(long nanos,long terminalCalls) {
+        frameNanos = nanos;
+        frameCalls = terminalCalls;
+        frameEvent.commit(nanos,terminalCalls);
+    }
+
+    /**
+     * The file was opened, or lines were added to it.
+     *
+     * @param reload false the first time the file is opened.
+     * @param lineStoreHeap Heap used to find the lines, from LineSource.heapBytes().
+     * @param lineFlagsHeap Heap used by the line flags.
+     */
+    public void load(long nanos,long bytes,boolean reload,long lineStoreHeap,long lineFlagsHeap) {
+        loadNanos = nanos;
+        loadBytes = bytes;
+        loadEvent.commit(nanos,bytes,reload ? 1 : 0,lineStoreHeap,lineFlagsHeap);
+    }
+
+    /** A search finished, or was cancelled after searching that many lines. */
+    public void search(long nanos,long lines,long hits) {
+        searchNanos = nanos;
+        searchLines = lines;
+        searchEvent.commit(nanos,lines,hits);
+    }
+
+    /**
+     * The numbers for the overlay, like
+     *
+     *     Frame 1.2ms 38 calls | Load 840ms 512MB/s | Search 12.3M lines/s | Heap lines 48.0MB flags 1.2KB
+     */
+    public String summary(long lineStoreHeap,long lineFlagsHeap) {
+        final String separator = " | ";
+        return "Frame "+millis(frameNanos)+" "+frameCalls+" calls"
+                +separator+"Load "+millis(loadNanos)+" "+bytes(perSecond(loadBytes,loadNanos))+"/s"
+                +separator+"Search "+count(perSecond(searchLines,searchNanos))+" lines/s"
+                +separator+"Heap lines "+bytes(lineStoreHeap)+" flags "+bytes(lineFlagsHeap);
+    }
+
+    private static long perSecond(long amount,long nanos) {
+        return nanos <= 0 ? 0 : (long)(amount*(double)NANOS_PER_SECOND/nanos);
+    }
+
+    static String millis(long nanos) {
+        final double millis = nanos/1e6;
+        return millis < 10 ? String.format(Locale.ROOT,"%.1fms",millis) : Math.round(millis)+"ms";
+    }
+
+    static String bytes(long bytes) {
+        if(bytes < 1024) {
+            return bytes+"B";
+        }
+        final String units = "KMGT";
+        double value = bytes;
+        int unit = -1;
+        while(value >= 1024 && unit+1 < units.length()) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format(Locale.ROOT,"%.1f%cB",value,units.charAt(unit));
+    }
+
+    static String count(long count) {
+        if(count < 1000) {
+            return Long.toString(count);
+        }
+        final String units = "KMG";
+        double value = count;
+        int unit = -1;
+        while(value >= 1000 && unit+1 < units.length()) {
+            value /= 1000;
+            unit++;
+        }
+        return String.format(Locale.ROOT,"%.1f%c",value,units.charAt(unit));
+    }
+}
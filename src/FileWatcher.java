@@ -0,0 +1,146 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Watches files for changes using the WatchService, so follow mode doesn't have to stat the file every time it
+ * checks. The directories the files are in get watched, since that is what the WatchService supports, and events for
+ * other files are ignored.
+ *
+ * Events are handled on a background thread. A burst of writes sends a burst of events, so after the first one the
+ * thread waits DEBOUNCE_MS for more before flagging the file as changed. The viewer picks that up with takeChanged().
+ *
+ * Not every filesystem sends events, network filesystems usually don't. isWatching() is false if the directory
+ * couldn't be watched or the watch stopped, and the viewer should go back to checking the file size itself.
+ */
+public class FileWatcher implements Closeable {
+    /** How long to wait for more events after the first one, before flagging the change. */
+    private static final long DEBOUNCE_MS = 10;
+
+    private final Set<Path> paths = new HashSet<>();
+    private WatchService service;
+    private Thread thread;
+    private volatile boolean watching;
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+    /** Starts watching the files. If the watch can't be set up, isWatching() returns false. */
+    public FileWatcher(File... files) {
+        try {
+            final Set<Path> dirs = new HashSet<>();
+            for(File file : files) {
+                final Path path = file.getAbsoluteFile().toPath();
+                paths.add(path);
+                dirs.add(path.getParent());
+            }
+            for(Path dir : dirs) {
+                if(service == null) {
+                    service = dir.getFileSystem().newWatchService();
+                }
+                dir.register(service,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        } catch(IOException | UnsupportedOperationException e) {
+            close();
+            return;
+        }
+        watching = true;
+        thread = new Thread(this::run,"watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** True while events are coming in. When false, the file needs to be polled. */
+    public boolean isWatching() {
+        return watching;
+    }
+
+    /**
+     * Returns true if the file changed since the last call. This is just a flag, so it's fine to call it often.
+     */
+    public boolean takeChanged() {
+        return changed.getAndSet(false);    //one step, so an event flagged in between isn't lost
+    }
+
+    @Override
+    public void close() {
+        watching = false;
+        if(service != null) {
+            try {
+                service.close();
+            } catch(IOException e) {
+                //nothing left to do with it
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while(watching) {
+                WatchKey key = service.take();
+                boolean ours = handleEvents(key);
+                //keep collecting events until things go quiet, so a burst of writes is only one change
+                while(watching && (key = service.poll(DEBOUNCE_MS,TimeUnit.MILLISECONDS)) != null) {
+                    ours |= handleEvents(key);
+                }
+                if(ours) {
+                    changed.set(true);
+                }
+            }
+        } catch(InterruptedException | ClosedWatchServiceException e) {
+            //closed, stop watching
+        } finally {
+            watching = false;
+        }
+    }
+
+    /**
+     * Checks the events on the key, and rearms it.
+     *
+     * @return true if any of them were for one of our files.
+     */
+    private boolean handleEvents(WatchKey key) {
+        boolean ours = false;
+        for(WatchEvent<?> event : key.pollEvents()) {
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                ours = true;    //events were lost, so assume ours was one of them
+            } else if(event.context() instanceof Path && key.watchable() instanceof Path
+                    && paths.contains(((Path)key.watchable()).resolve((Path)event.context()))) {
+                ours = true;
+            }
+        }
+        if(!key.reset()) {
+            watching = false;   //a directory is gone
+        }
+        return ours;
+    }
+}
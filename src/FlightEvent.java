@@ -0,0 +1,138 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A custom Java Flight Recorder event type, so a session can be recorded with -XX:StartFlightRecording and looked at
+ * later in JDK Mission Control or with `jfr print --events garfield.*`.
+ *
+ * Garfield is built for Java 8, which doesn't have the jdk.jfr API to extend Event with, so the event type is made
+ * at runtime with jdk.jfr.EventFactory, found by reflection. On a JVM without it, commit() does nothing. Every field
+ * is a long. Nothing is set unless a recording wants the event, so it costs next to nothing the rest of the time.
+ */
+public class FlightEvent {
+    /** The field is a duration in nanoseconds. */
+    public static final String NANOSECONDS = "Timespan";
+    /** The field is a number of bytes. */
+    public static final String BYTES = "DataAmount";
+    /** The field is a plain count. */
+    public static final String COUNT = null;
+
+    private static final String CATEGORY = "Garfield";
+    private static final Api API = Api.find();
+
+    private final Object factory;   //null when JFR isn't there
+
+    /**
+     * @param name Event name, like "garfield.Frame".
+     * @param label Name to show in tools.
+     * @param fields Three strings per field: the name, its label, and NANOSECONDS, BYTES or COUNT.
+     */
+    public FlightEvent(String name,String label,String... fields) {
+        Object made = null;
+        if(API != null) {
+            try {
+                made = API.create(name,label,fields);
+            } catch(ReflectiveOperationException | RuntimeException e) {
+                made = null;    //the event is lost, not the viewer
+            }
+        }
+        factory = made;
+    }
+
+    /** Sends an event with the values of the fields, in order, if a recording wants it. */
+    public void commit(long... values) {
+        if(factory == null) {
+            return;
+        }
+        try {
+            final Object event = API.newEvent.invoke(factory);
+            if(!(Boolean)API.shouldCommit.invoke(event)) {
+                return;
+            }
+            for(int i = 0; i < values.length; i++) {
+                API.set.invoke(event,i,values[i]);
+            }
+            API.commit.invoke(event);
+        } catch(ReflectiveOperationException | RuntimeException e) {
+            //don't let diagnostics break the viewer
+        }
+    }
+
+    /** The parts of jdk.jfr used, looked up once. */
+    private static class Api {
+        final Constructor<?> newAnnotation;     //AnnotationElement(Class, Object)
+        final Constructor<?> newValue;          //ValueDescriptor(Class, String, List<AnnotationElement>)
+        final Method create;                    //EventFactory.create(List<AnnotationElement>, List<ValueDescriptor>)
+        final Method newEvent;
+        final Method shouldCommit;
+        final Method set;
+        final Method commit;
+
+        private Api() throws ReflectiveOperationException {
+            final Class<?> annotation = Class.forName("jdk.jfr.AnnotationElement");
+            final Class<?> value = Class.forName("jdk.jfr.ValueDescriptor");
+            final Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+            final Class<?> event = Class.forName("jdk.jfr.Event");
+            newAnnotation = annotation.getConstructor(Class.class,Object.class);
+            newValue = value.getConstructor(Class.class,String.class,List.class);
+            create = factory.getMethod("create",List.class,List.class);
+            newEvent = factory.getMethod("newEvent");
+            shouldCommit = event.getMethod("shouldCommit");
+            set = event.getMethod("set",int.class,Object.class);
+            commit = event.getMethod("commit");
+        }
+
+        static Api find() {
+            try {
+                return new Api();
+            } catch(ReflectiveOperationException | LinkageError e) {
+                return null;    //older then Java 11, or 8u262 for the backport
+            }
+        }
+
+        Object create(String name,String label,String[] fields) throws ReflectiveOperationException {
+            final List<Object> annotations = new ArrayList<>();
+            annotations.add(annotation("Name",name));
+            annotations.add(annotation("Label",label));
+            annotations.add(annotation("Category",new String[] {CATEGORY}));
+            annotations.add(annotation("StackTrace",false));   //it would only show the reflection calls
+            final List<Object> values = new ArrayList<>();
+            for(int i = 0; i+2 < fields.length; i += 3) {
+                final List<Object> fieldAnnotations = new ArrayList<>();
+                fieldAnnotations.add(annotation("Label",fields[i+1]));
+                if(NANOSECONDS.equals(fields[i+2])) {
+                    fieldAnnotations.add(annotation(NANOSECONDS,"NANOSECONDS"));
+                } else if(BYTES.equals(fields[i+2])) {
+                    fieldAnnotations.add(annotation(BYTES,"BYTES"));
+                }
+                values.add(newValue.newInstance(long.class,fields[i],fieldAnnotations));
+            }
+            return create.invoke(null,annotations,Collections.unmodifiableList(values));
+        }
+
+        private Object annotation(String type,Object value) throws ReflectiveOperationException {
+            return newAnnotation.newInstance(Class.forName("jdk.jfr."+type),value);
+        }
+    }
+}
@@ -16,18 +16,18 @@
  * limitations under the License.
  * ******************************************************************************/
 
-import com.axorion.NConsole;
-
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -38,6 +38,12 @@ import java.util.regex.PatternSyntaxException;
 public class Garfield {
     private static final int TIMEOUT_DELAY = 250;
     private static final int TIMEOUT_BLOCK = -1;
+    private static final int FRAME_INTERVAL = 40;     //ms between frames drawn for new lines while following
+    private static final int HEADLESS_WIDTH = 80;
+    private static final int HEADLESS_HEIGHT = 25;
+    private static final int MAX_TAG_WIDTH = 16;
+    private static final long CACHE_MIN_BYTES = 1<<20;  //smaller files are quicker to scan then to load an index for
+    private static final File SESSION_FILE = new File(IndexCache.DEFAULT_FOLDER,"last-session");
 
     private static final int DIRECTION_FORWARD = 1;
     private static final int DIRECTION_REVERSE = -1;
@@ -50,6 +56,7 @@ public class Garfield {
     private static final int MESSAGE_PAIR = 4;
     private static final int FOLLOW_PAIR = 5;
     private static final int SEARCH_PAIR = 6;
+    private static final int MATCH_PAIR = 7;
 
     private static final int KEY_LEFT = '[';
     private static final int KEY_RIGHT = ']';
@@ -78,16 +85,29 @@ public class Garfield {
     private static final int KEY_GOTO = 'g';
     private static final int KEY_IGNORE_CASE = 'c';
     private static final int KEY_HELP = 'h';
-
-    private final NConsole console;
+    private static final int KEY_FILTER = '&';
+    private static final int KEY_BLOCK_NEXT = 'e';
+    private static final int KEY_BLOCK_PREV = 'E';
+    private static final int KEY_COLLAPSE = 'z';
+    private static final int KEY_GOTO_TIME = 't';
+    private static final int KEY_WRAP = 'w';
+    private static final int KEY_DIAGNOSTICS = 'd';
+    private static final int KEY_ESCAPE = 27;
+    private static final int NO_KEY = -1;
+
+    private final ScreenBuffer console;
     private final String filename;
     private final File currentFile;
+    private final List<File> mergedFiles = new ArrayList<>();  //shown interleaved with currentFile
+    private int tagWidth;               //of the file name each line is tagged with, when merging
     private boolean running = true;
-    private final ArrayList<String> fileContents = new ArrayList<>();
+    private LineSource fileContents;
     private final LineFlags lineFlags = new LineFlags();
+    private final MatchIndex matches = new MatchIndex();    //lines found by the current search
     private int lineScreen;
     private int linesInFile;
-    private long fileSizeBytes;
+    private long fileSizeBytes;         //of the file on disk, not counting files it was rotated from
+    private Object fileKey;             //identifies the file we have open, to notice when it's replaced
     private int fileMaxLineLength;
     private int lineOffset;
     private int horzOffset;
@@ -96,10 +116,34 @@ public class Garfield {
     private int lineNumDigitCount;
     private Date lastLoaded;
     private boolean following = false;
+    private boolean filtering = false;  //only show the lines in matches
+    private boolean collapsed = false;  //only show the first line of each log entry
+    private boolean wrapping = false;   //long lines carry on in the rows below, instead of scrolling sideways
+    private WrapIndex wrapIndex;        //rows of the lines shown while wrapping, null when it has to be made again
+    private int topRow;                 //row of the line at lineOffset that is at the top of the screen, when wrapping
+    private String blockPattern = BlockIndex.DEFAULT_START_PATTERN;
+    private BlockIndex blocks;          //built the first time it's needed
+    private boolean useTimeIndex = false;
+    private TimestampIndex times;       //only when useTimeIndex is set
     private String query;
     private boolean queryWasRegex = false;
     private boolean ignoreCase = true;
     private boolean isWindows = false;
+    private SearchJob searchJob;
+    private MatchSpans matchSpans;      //where the query matches in the lines drawn, null if there is no query
+    private FileWatcher watcher;        //only while following
+    private IngestJob ingestJob;        //reads what is appended while following
+    private final ReentrantLock linesLock = new ReentrantLock(true);    //held except while waiting for a key
+    private long lastFrame;             //when the screen was last drawn
+    private boolean dirty = true;       //something changed that isn't on the screen yet
+    private long shownLag;              //ingest lag on the status bar
+    private boolean searchJumpToMatch;  //scroll to the first match the running search finds
+    private int pendingKey = NO_KEY;
+    private IndexCache indexCache;      //null to not save anything between runs
+    private int startLine = -1;         //line to show when the view starts
+    private final Diagnostics diagnostics = new Diagnostics();
+    private boolean showDiagnostics = false;    //the overlay under the status bar
+    private boolean scripted = false;   //keys come from -k instead of the keyboard
 
     private static void usage() {
         System.out.println("Garfield Log Viewer");
@@ -108,7 +152,11 @@ public class Garfield {
 
     public static void main(String[] args) throws IOException {
         boolean isWindows = false;
-        String filename = null;
+        List<String> filenames = new ArrayList<>();
+        String keys = null;
+        boolean lastSession = false;
+        String blockPattern = BlockIndex.DEFAULT_START_PATTERN;
+        boolean useTimeIndex = false;
 
         if(args.length < 1) {
             usage();
@@ -116,28 +164,84 @@ public class Garfield {
 
         for(int i=0; i<args.length; i++) {
             if(args[i].equals("makefile")) {
-                SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.S");
-                int num = Integer.parseInt(args[1]);
-                for(int j = 0; j < num; j++) {
-                    System.out.println(format.format(new Date()));
+                try {
+                    LogGenerator.main(Arrays.copyOfRange(args,i+1,args.length));
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
                 System.exit(0);
             } else if(args[i].equalsIgnoreCase("-w") || args[i].equals("--windows")) {
                 isWindows = true;
                 System.out.println("isWindows");
+            } else if((args[i].equals("-k") || args[i].equals("--keys")) && i+1 < args.length) {
+                keys = args[++i];   //run without a terminal, pressing these keys
+            } else if((args[i].equals("-b") || args[i].equals("--block")) && i+1 < args.length) {
+                blockPattern = args[++i];
+            } else if(args[i].equals("-t") || args[i].equals("--time-index")) {
+                useTimeIndex = true;
+            } else if(args[i].equals("-l") || args[i].equals("--last")) {
+                lastSession = true;
             } else {
-                filename = args[i];
+                filenames.add(args[i]);
+            }
+        }
+        int startLine = -1;
+        if(lastSession && filenames.isEmpty()) {
+            List<String> session = readSession();
+            if(session.size() < 2) {
+                System.out.println("No last session");
+                System.exit(1);
             }
+            startLine = Integer.parseInt(session.get(0));
+            filenames.addAll(session.subList(1,session.size()));
+        }
+        if(filenames.isEmpty()) {
+            usage();
         }
 
-        File f = new File(filename);
-        if(f.exists()) {
+        try {
+            Pattern.compile(blockPattern);
+        } catch(PatternSyntaxException e) {
+            System.out.println("Bad log entry pattern: "+e.getMessage());
+            System.exit(1);
+        }
+
+        for(String filename : filenames) {
+            if(!new File(filename).exists()) {
+                System.out.println("File not found: "+filename);
+                System.exit(1);
+            }
+        }
+
+        final String filename = filenames.get(0);
+        if(keys != null) {
+            HeadlessTerminal terminal = new HeadlessTerminal(HEADLESS_WIDTH,HEADLESS_HEIGHT);
+            terminal.pushKeys(keys);
+            terminal.setKeyWhenDone(KEY_QUIT);
+            Garfield app = new Garfield(filename,terminal);
+            app.blockPattern = blockPattern;
+            app.useTimeIndex = useTimeIndex;
+            app.indexCache = new IndexCache(IndexCache.DEFAULT_FOLDER);
+            app.startLine = startLine;
+            app.scripted = true;
+            for(String other : filenames.subList(1,filenames.size())) {
+                app.mergeFile(other);
+            }
+            app.loadFile();
+            app.view();
+            System.out.print(terminal.getScreen());
+        } else {
             Garfield app = new Garfield(filename);
             app.isWindows = isWindows;
+            app.blockPattern = blockPattern;
+            app.useTimeIndex = useTimeIndex;
+            app.indexCache = new IndexCache(IndexCache.DEFAULT_FOLDER);
+            app.startLine = startLine;
+            for(String other : filenames.subList(1,filenames.size())) {
+                app.mergeFile(other);
+            }
             app.loadFile();
             app.view();
-        } else {
-            System.out.println("File not found");
         }
     }
 
@@ -146,19 +250,38 @@ public class Garfield {
      * @param filename Filename that will e loaded.
      */
     public Garfield(String filename) {
+        this(filename,new NCursesConsole());
+    }
+
+    /**
+     * Constructs the viewer using the specified terminal, initializes it, but doesn't load the file.
+     * @param filename Filename that will e loaded.
+     * @param terminal Where to draw and get keys from.
+     */
+    public Garfield(String filename,Terminal terminal) {
         this.filename = filename;
         this.currentFile = new File(filename);
-        console = new NConsole();
+        console = new ScreenBuffer(terminal);
         console.initscr();
-        console.initPair(CURRENT_LINE_PAIR,NConsole.COLOR_BLACK,NConsole.COLOR_WHITE);
-        console.initPair(STATUS_BAR_PAIR,NConsole.COLOR_YELLOW,NConsole.COLOR_BLUE);
-        console.initPair(BOOKMARK_PAIR,NConsole.COLOR_WHITE,NConsole.COLOR_RED);
-        console.initPair(MESSAGE_PAIR,NConsole.COLOR_WHITE,NConsole.COLOR_RED);
-        console.initPair(FOLLOW_PAIR,NConsole.COLOR_BLACK,NConsole.COLOR_CYAN);
-        console.initPair(SEARCH_PAIR,NConsole.COLOR_BLACK,NConsole.COLOR_YELLOW);
+        console.initPair(CURRENT_LINE_PAIR,Terminal.COLOR_BLACK,Terminal.COLOR_WHITE);
+        console.initPair(STATUS_BAR_PAIR,Terminal.COLOR_YELLOW,Terminal.COLOR_BLUE);
+        console.initPair(BOOKMARK_PAIR,Terminal.COLOR_WHITE,Terminal.COLOR_RED);
+        console.initPair(MESSAGE_PAIR,Terminal.COLOR_WHITE,Terminal.COLOR_RED);
+        console.initPair(FOLLOW_PAIR,Terminal.COLOR_BLACK,Terminal.COLOR_CYAN);
+        console.initPair(SEARCH_PAIR,Terminal.COLOR_BLACK,Terminal.COLOR_YELLOW);
+        console.initPair(MATCH_PAIR,Terminal.COLOR_BLACK,Terminal.COLOR_GREEN);
 //        showSplash();
     }
 
+    /**
+     * Adds a file to show along with the main one, with the lines of all of them interleaved by their timestamps.
+     * Takes effect the next time the file is loaded.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void mergeFile(String filename) {
+        mergedFiles.add(new File(filename));
+    }
+
     public void showSplash() {
         console.clear();
         console.printCenterX(console.getHeight()/2,"Garfield the Log Viewer");
@@ -179,20 +302,53 @@ public class Garfield {
      */
     @SuppressWarnings("WeakerAccess")
     public void view() throws IOException {
-        console.timeout(TIMEOUT_DELAY);
+        console.timeout(keyDelay());
         console.updateSize();
         screenWidth = console.getWidth();
         screenHeight = console.getHeight();
         console.clear();
+        if(startLine >= 0 && startLine < linesInFile) {
+            scrollIntoView(startLine);
+        }
+        linesLock.lock();
+        try {
+            viewLoop();
+        } finally {
+            //the terminal is put back however the loop ends
+            console.endwin();
+            cancelSearch();
+            stopWatching();
+            saveState();
+            fileContents.close();
+            linesLock.unlock();
+        }
+    }
+
+    private void viewLoop() throws IOException {
         boolean escaped = false;    //ch was escaped
         boolean canProcessKey = true;
+        boolean keyPressed = true;
         while(running) {
             try {
-                updateDisplay();
-                int ch = console.getch();
-                if(ch == 27) {
+                if(scripted && searchJob != null) {
+                    searchJob.join();   //so the next key sees the whole result, however fast the search thread is
+                }
+                collectSearchResults();
+                //keys are drawn straight away, other changes no more then once a frame, and nothing is drawn if
+                //nothing changed
+                if(keyPressed || dirty && System.nanoTime()-lastFrame >= FRAME_INTERVAL*1000000L) {
+                    reloadIfTruncated();    //drawing lines cut off the end of the file would fault
+                    updateDisplay();
+                }
+                int ch = nextKey();
+                keyPressed = ch != NO_KEY;
+                if(ch == KEY_ESCAPE) {
                     escaped = true;
                     canProcessKey = false;
+                    if(searchJob != null && isEscapeKey()) {
+                        cancelSearch();
+                        escaped = false;
+                    }
                 } else if(ch == 91) {
                     escaped = true;
                     canProcessKey = false;
@@ -232,35 +388,138 @@ public class Garfield {
                     processKey(ch);
                 }
             } catch(Exception e) {
-                showMultiLineMsg("Unhandled error - PRESS ENTER",e.getMessage());
+                //the file may have been truncated between the check and reading the lines
+                if(!(e instanceof UncheckedIOException && reloadIfTruncated())) {
+                    showMultiLineMsg("Unhandled error - PRESS ENTER",e.getMessage());
+                }
+                dirty = true;
             }
         }
-
-        console.endwin();
     }
 
     /**
      * Checks if the window size has changed. If so, clear the screen so we don't have artifacts. If we ar following
      * then we need to position the cursor at the end of the file.
      */
-    private void updateWindowSize() {
+    void updateWindowSize() {
         if(console.updateSize()) {
+            dirty = true;
             screenWidth = console.getWidth();
             screenHeight = console.getHeight();
             console.clear();
+            wrapIndex = null;   //rows are a different width now
             if(following) {
                 //make sure the last line is selected and in view
                 end();
+            } else if(wrapping) {
+                fixTopRow();
+                showSelected(lineOffset+lineScreen);
             }
         }
     }
 
+    /**
+     * Returns the next key, either one that was read ahead by isEscapeKey() or a new one from the console. While
+     * waiting, the ingest job can add to the lines, unless a search is reading them.
+     */
+    private int nextKey() {
+        if(pendingKey != NO_KEY) {
+            final int ch = pendingKey;
+            pendingKey = NO_KEY;
+            return ch;
+        }
+        if(ingestJob == null || searchJob != null || !linesLock.isHeldByCurrentThread()) {
+            return console.getch();
+        }
+        linesLock.unlock();
+        try {
+            return console.getch();
+        } finally {
+            linesLock.lock();
+        }
+    }
+
+    /**
+     * Called after reading an escape, checks if it was the Esc key by itself rather then the start of a key sequence
+     * like an arrow key. Sequences arrive all at once, so if nothing else is waiting it was Esc. Anything that was
+     * waiting is kept for nextKey().
+     */
+    private boolean isEscapeKey() {
+        console.timeout(0);
+        pendingKey = console.getch();
+        console.timeout(keyDelay());
+        return pendingKey == NO_KEY;
+    }
+
+    /** How long to wait for a key before checking on the file and search again. */
+    private int keyDelay() {
+        return ingestJob != null ? FRAME_INTERVAL : TIMEOUT_DELAY;
+    }
+
+    /**
+     * Takes everything the ingest job read since the last frame in one go, and scrolls to the end once. When the job
+     * noticed a change that it couldn't read anything from, the file may have been rotated or truncated, which
+     * reloadFile() sorts out.
+     */
     private void checkFileChanged() throws IOException {
-        if(following && currentFile.length() != fileSizeBytes) {
+        //the search reads the lines on another thread, so wait until it's done before adding to them
+        if(ingestJob == null || searchJob != null) {
+            return;
+        }
+        final IngestJob.Step step = ingestJob.take();
+        if(step != null) {
+            final int firstChanged = Math.max(0,linesInFile-1);  //last line may have only been partly written
+            countLines();
+            linesAppended(firstChanged,step.nanos,step.bytes);
+            end();
+            dirty = true;
+        }
+        if(ingestJob.takeStale() && (fileReplaced() || fileTruncated())) {
+            final LineSource old = fileContents;
             reloadFile();
+            if(fileContents != old) {
+                startIngest();  //the job has the old lines
+            }
+            dirty = true;
+        }
+        if(ingestLag() != shownLag) {
+            dirty = true;
+        }
+    }
+
+    private void startWatching() {
+        stopWatching();
+        watcher = new FileWatcher(allFiles());
+        startIngest();
+    }
+
+    private void stopWatching() {
+        stopIngest();
+        if(watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    private void startIngest() {
+        stopIngest();
+        ingestJob = new IngestJob(fileContents,linesLock,watcher,allFiles()).start();
+        console.timeout(keyDelay());
+    }
+
+    private void stopIngest() {
+        if(ingestJob != null) {
+            ingestJob.stop();
+            ingestJob = null;
+            console.timeout(keyDelay());
         }
     }
 
+    /** Bytes the files on disk have that haven't been read yet, while following. */
+    private long ingestLag() {
+        return ingestJob == null ? 0 : Math.max(0,ingestJob.getDiskBytes()-fileSizeBytes);
+    }
+
     private void processKey(int ch) throws IOException {
         if(following) {
             //only keys that will not effect the position of the file are valid
@@ -269,6 +528,10 @@ public class Garfield {
                 case KEY_BOOKMARK_SET: bookmark(currentLineNum()); break;
                 case KEY_SHOW_LINE_NUMBERS: toggleShowLineNumbers(); break;
                 case KEY_FOLLOW: toggleFollowMode(); break;
+                case KEY_FILTER: toggleFilter(); break;
+                case KEY_COLLAPSE: toggleCollapsed(); break;
+                case KEY_WRAP: toggleWrap(); break;
+                case KEY_DIAGNOSTICS: toggleDiagnostics(); break;
                 case KEY_IGNORE_CASE:       toggleIgnoreCase(); break;
                 case KEY_HELP:              showHelp(); break;
             }
@@ -294,6 +557,12 @@ public class Garfield {
 
                 case KEY_SHOW_LINE_NUMBERS: toggleShowLineNumbers(); break;
                 case KEY_FOLLOW:            toggleFollowMode(); break;
+                case KEY_FILTER:            toggleFilter(); break;
+                case KEY_COLLAPSE:          toggleCollapsed(); break;
+                case KEY_WRAP:              toggleWrap(); break;
+                case KEY_DIAGNOSTICS:       toggleDiagnostics(); break;
+                case KEY_BLOCK_NEXT:        nextBlock(DIRECTION_FORWARD); break;
+                case KEY_BLOCK_PREV:        nextBlock(DIRECTION_REVERSE); break;
 
                 case KEY_SEARCH:            search(false); break;
                 case KEY_SEARCH_REGEX:      search(true); break;
@@ -302,6 +571,7 @@ public class Garfield {
 
                 case KEY_RELOAD:            refresh(true); break;
                 case KEY_GOTO:              gotoLine(); break;
+                case KEY_GOTO_TIME:         gotoTime(); break;
                 case KEY_IGNORE_CASE:       toggleIgnoreCase(); break;
                 case KEY_HELP:              showHelp(); break;
             }
@@ -315,51 +585,312 @@ public class Garfield {
         }
     }
 
+    /**
+     * Picks up changes to the file. If we are following and the file was rotated, meaning it was renamed and a new
+     * one created in its place, the rest of the old file is read and then the new one carries on after it. Flags
+     * and indexes are kept. If the file itself got smaller, it was truncated, and the lines we had are gone.
+     */
     private void reloadFile() throws IOException {
-        if(currentFile.length() < fileSizeBytes) {
-            //if the file has gotten smaller, then the file has been reset
+        final boolean replaced = fileReplaced();
+        if(!replaced && fileTruncated()) {
+            //if the file has gotten smaller, or was emptied and written again, then the file has been reset
             loadFile();
             lineFlags.clear();
+            matches.clear();
             lineScreen = 0;
             lineOffset = 0;
+            topRow = 0;
             console.clear();
+        } else if(following) {
+            final int firstChanged = Math.max(0,linesInFile-1);  //last line may have only been partly written
+            final long start = System.nanoTime();
+            final long oldSize = fileContents.sizeBytes();
+            //switch once the new file has been written to, until then the old one may still be getting lines
+            if(appendFile(replaced && currentFile.length() > 0)) {
+                linesAppended(firstChanged,System.nanoTime()-start,Math.max(0,fileContents.sizeBytes()-oldSize));
+            }
+            end();
         } else {
             loadFile();
-            if(following) {
-                searchSetFlags(query,queryWasRegex);
-                end();
+        }
+    }
+
+    /** True if the file got smaller, or was emptied and written again past where it was. */
+    private boolean fileTruncated() throws IOException {
+        return diskSize() < fileSizeBytes || fileContents.isTruncated();
+    }
+
+    /**
+     * Opens the file again if it was truncated, which the watcher may not have noticed yet.
+     *
+     * @return True if it was.
+     */
+    private boolean reloadIfTruncated() throws IOException {
+        if(fileReplaced() || !fileTruncated()) {
+            return false;
+        }
+        final LineSource old = fileContents;
+        reloadFile();
+        if(ingestJob != null && fileContents != old) {
+            startIngest();  //the job has the old lines
+        }
+        dirty = true;
+        return true;
+    }
+
+    /** True if the file we have open was deleted, or a new one put in its place. Never when merging. */
+    private boolean fileReplaced() {
+        final Object key = fileKey(currentFile);
+        return mergedFiles.isEmpty() && (key == null ? !currentFile.exists() : !key.equals(fileKey));
+    }
+
+    /**
+     * Brings the flags and indexes up to date after lines were added to the file while following.
+     *
+     * @param firstChanged First line that is new, or was extended.
+     * @param nanos Time spent reading the new bytes.
+     * @param bytes How many new bytes were read.
+     */
+    private void linesAppended(int firstChanged,long nanos,long bytes) {
+        if(fileContents instanceof MergedLineSource) {
+            //the last line of one of the files may have been merged further up before it was finished
+            firstChanged = Math.min(firstChanged,((MergedLineSource)fileContents).takeFirstChanged());
+        }
+        diagnostics.load(nanos,bytes,true,fileContents.heapBytes(),lineFlags.heapBytes());
+        lineFlags.reset(firstChanged,LINE_FOUND_FLAG);
+        matches.removeFrom(firstChanged);
+        if(matchSpans != null) {
+            matchSpans.forget(firstChanged);
+        }
+        if(wrapIndex != null) {
+            if(collapsed) {
+                wrapIndex = null;   //the count of lines hidden in the last entry changed
+            } else {
+                wrapIndex.forget(firstChanged);
             }
         }
+        searchSetFlags(query,queryWasRegex,firstChanged);
+        if(blocks != null) {
+            blocks.update(fileContents,firstChanged,linesInFile);
+        }
+        if(times != null) {
+            times.update(fileContents,firstChanged,linesInFile);
+        }
     }
 
-    private void updateDisplay() {
+    /** Draws the file and status bar, and sends the changes to the terminal. */
+    void updateDisplay() {
+        final long start = System.nanoTime();
+        lastFrame = start;
+        final long calls = console.getCallCount();
+        dirty = false;
+        shownLag = ingestLag();
         showFile();
         showStatusBar();
+        if(showDiagnostics) {
+            showDiagnostics();
+        }
         console.move(screenWidth-1,lineScreen);
         console.refresh();
+        diagnostics.frame(System.nanoTime()-start,console.getCallCount()-calls);
     }
 
-    /** Load the file entirely into memory. Note that really large files might not be a good idea. */
+    /**
+     * Maps the file and indexes where each line starts. The lines themselves stay on disk and are only read when
+     * they are displayed or searched, so really large files are fine.
+     */
     @SuppressWarnings("WeakerAccess")
     public void loadFile() throws IOException {
-        fileContents.clear();
+        cancelSearch();
+        final long start = System.nanoTime();
+        final boolean reload = fileContents != null;
+        if(fileContents != null) {
+            fileContents.close();
+        }
+
+        lastLoaded = new Date();
+        blocks = null;
+        if(matchSpans != null) {
+            matchSpans.clear();     //lines may have changed
+        }
+        wrapIndex = null;
+        fileKey = fileKey(currentFile);
+        fileContents = openFiles();
+        fileSizeBytes = fileContents.sizeBytes();
+        fileMaxLineLength = Math.max(fileMaxLineLength,fileContents.maxLineLength());  //keep track of the longest line
+        linesInFile = fileContents.lineCount();
+        lineNumDigitCount = Integer.toString(linesInFile).length();
+        if(useTimeIndex) {
+            times = new TimestampIndex();
+            times.update(fileContents,0,linesInFile);
+        }
+        if(indexCache != null && mergedFiles.isEmpty()) {
+            final IntList marks = indexCache.readMarks(currentFile);
+            for(int i = 0; i < marks.size() && marks.get(i) < linesInFile; i++) {
+                lineFlags.set(marks.get(i),LINE_BOOKMARKED_FLAG);
+            }
+        }
+        diagnostics.load(System.nanoTime()-start,fileContents.sizeBytes(),reload,fileContents.heapBytes(),
+                lineFlags.heapBytes());
+    }
+
+    /**
+     * Saves the index of the file if it grew while we were following it, and what files were open for -l. The
+     * bookmarks are saved as they are set. Nothing is saved for a -k script, which isn't a session to go back to.
+     */
+    private void saveState() {
+        if(indexCache == null || scripted) {
+            return;
+        }
+        if(fileContents instanceof MappedLineSource && fileContents.sizeBytes() >= CACHE_MIN_BYTES) {
+            indexCache.save(currentFile,(MappedLineSource)fileContents);
+        }
+        List<String> session = new ArrayList<>();
+        session.add(Integer.toString(Math.max(0,currentLineNum())));
+        for(File f : allFiles()) {
+            session.add(f.getAbsolutePath());
+        }
+        try {
+            if(SESSION_FILE.getParentFile().isDirectory() || SESSION_FILE.getParentFile().mkdirs()) {
+                Files.write(SESSION_FILE.toPath(),session,StandardCharsets.UTF_8);
+            }
+        } catch(IOException e) {
+            //not being able to start the last session again isn't worth complaining about on the way out
+        }
+    }
 
+    /** The line that was current, followed by the files that were open, the last time we quit. */
+    private static List<String> readSession() {
+        try {
+            return Files.readAllLines(SESSION_FILE.toPath(),StandardCharsets.UTF_8);
+        } catch(IOException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    /** Saves the bookmarks. Only for a single file, where line numbers are the lines of the file on disk. */
+    private void saveMarks() {
+        if(indexCache == null || !mergedFiles.isEmpty() || fileContents instanceof ChainedLineSource) {
+            return;
+        }
+        IntList marks = new IntList();
+        for(int line = lineFlags.nextSetLine(0,LINE_BOOKMARKED_FLAG); line >= 0 && line < linesInFile;
+                line = lineFlags.nextSetLine(line+1,LINE_BOOKMARKED_FLAG)) {
+            marks.add(line);
+        }
+        indexCache.saveMarks(currentFile,fileSizeBytes,marks);
+    }
+
+    /**
+     * Reads only what was appended to the file since it was last loaded or appended.
+     *
+     * @param rotated true if the file was replaced by a new one. Whatever is left of the old one is read, then the
+     *                new one is added after it.
+     * @return true if there was anything new.
+     */
+    private boolean appendFile(boolean rotated) throws IOException {
+        boolean grew = fileContents.update();
+        if(rotated) {
+            final ChainedLineSource chain = fileContents instanceof ChainedLineSource
+                    ? (ChainedLineSource)fileContents
+                    : new ChainedLineSource(fileContents);
+            fileKey = fileKey(currentFile);
+            chain.add(openFile(currentFile));
+            fileContents = chain;
+            grew = true;
+        }
+        if(!grew) {
+            return false;
+        }
+        countLines();
+        return true;
+    }
+
+    /** Catches up with the lines that were added to fileContents. */
+    private void countLines() {
         lastLoaded = new Date();
-        fileSizeBytes = currentFile.length();
-        BufferedReader in = new BufferedReader(new FileReader(currentFile));
-        String line;
-        while((line = in.readLine()) != null) {
-            fileContents.add(line);
-            final int lineLength = line.length();
-            if(lineLength > fileMaxLineLength) {
-                fileMaxLineLength = lineLength;     //keep track of the longest line
-            }
-        }
-        in.close();
-        linesInFile = fileContents.size();
+        fileSizeBytes = currentSource().sizeBytes();
+        fileMaxLineLength = Math.max(fileMaxLineLength,fileContents.maxLineLength());
+        linesInFile = fileContents.lineCount();
         lineNumDigitCount = Integer.toString(linesInFile).length();
     }
 
+    /** Opens the file, or when merging, all of the files merged by time. */
+    private LineSource openFiles() throws IOException {
+        if(mergedFiles.isEmpty()) {
+            tagWidth = 0;
+            return openFile(currentFile);
+        }
+        final File[] files = allFiles();
+        final LineSource[] sources = new LineSource[files.length];
+        final String[] names = new String[files.length];
+        tagWidth = 0;
+        try {
+            for(int i = 0; i < files.length; i++) {
+                sources[i] = openFile(files[i]);
+                names[i] = files[i].getName();
+                tagWidth = Math.max(tagWidth,Math.min(MAX_TAG_WIDTH,names[i].length()));
+            }
+        } catch(IOException e) {
+            for(LineSource source : sources) {
+                if(source != null) {
+                    source.close();
+                }
+            }
+            throw e;
+        }
+        return new MergedLineSource(sources,names);
+    }
+
+    private File[] allFiles() {
+        final File[] files = new File[mergedFiles.size()+1];
+        files[0] = currentFile;
+        for(int i = 1; i < files.length; i++) {
+            files[i] = mergedFiles.get(i-1);
+        }
+        return files;
+    }
+
+    /** Size of the file, or of all the files when merging. */
+    private long diskSize() {
+        long size = currentFile.length();
+        for(File f : mergedFiles) {
+            size += f.length();
+        }
+        return size;
+    }
+
+    /**
+     * Maps a plain file, or indexes a gzip file so it can be read without decompressing it all. Big files use the
+     * index saved last time they were opened, if there is one.
+     */
+    private LineSource openFile(File f) throws IOException {
+        if(GzipLineSource.isGzip(f)) {
+            return new GzipLineSource(f,Charset.defaultCharset(),indexCache == null ? null : indexCache.getFolder());
+        }
+        if(indexCache != null && f.length() >= CACHE_MIN_BYTES) {
+            return indexCache.open(f,Charset.defaultCharset());
+        }
+        return new MappedLineSource(f);
+    }
+
+    /** The source reading the file that's on disk now. Only differs from fileContents after a rotation. */
+    private LineSource currentSource() {
+        if(fileContents instanceof ChainedLineSource) {
+            return ((ChainedLineSource)fileContents).last();
+        }
+        return fileContents;
+    }
+
+    /** Identifies the file on disk, so a new file with the same name can be told apart. Null if there isn't one. */
+    private static Object fileKey(File f) {
+        try {
+            return Files.readAttributes(f.toPath(),BasicFileAttributes.class).fileKey();
+        } catch(IOException e) {
+            return null;
+        }
+    }
+
     /** Displays the lines of the file. */
     private void showFile() {
         console.home();
@@ -367,11 +898,27 @@ public class Garfield {
         int maxx = screenWidth;
         int maxy = getMaxY();
 
-        for(int i = lineOffset, y = 0; i< linesInFile && y<maxy; i++,y++) {
-            if(i==currentLineNum())
-                showLine(i,true,y,maxx);
-            else
-                showLine(i,false,y,maxx);
+        final int viewLines = viewLineCount();
+        int y = 0;
+        if(wrapping) {
+            fixTopRow();
+            for(int i = lineOffset; i < viewLines && y < maxy; i++) {
+                final int lineNum = fileLineNum(i);
+                final int rows = wrapIndex().rowCount(lineNum);
+                for(int row = i == lineOffset ? topRow : 0; row < rows && y < maxy; row++,y++) {
+                    showLine(lineNum,row,i == lineOffset+lineScreen,y,maxx);
+                }
+            }
+        } else {
+            for(int i = lineOffset; i< viewLines && y<maxy; i++,y++) {
+                if(i==lineOffset+lineScreen)
+                    showLine(fileLineNum(i),0,true,y,maxx);
+                else
+                    showLine(fileLineNum(i),0,false,y,maxx);
+            }
+        }
+        for(; y<maxy; y++) {
+            clearLine(y);   //fewer lines then the screen holds, like a short filter
         }
     }
 
@@ -380,26 +927,47 @@ public class Garfield {
      *
      *     ###: abc
      *
-     * Where `###` is the line number, and `abc` is the string.
+     * Where `###` is the line number, and `abc` is the string. When wrapping, each row of the line is shown
+     * separately, and the rows after the first are indented by the width of the line number.
      *
      * @param lineNum The line of the file to show.
+     * @param wrapRow Which row of the line to show when wrapping, 0 otherwise.
      * @param selected true to show as a selected line, false to show as normal.
      * @param y Y screen position to display the line.
      * @param width maximum width to of the line, won't print more then this number of characers.
      */
-    private void showLine(int lineNum, boolean selected, int y, int width) {
+    private void showLine(int lineNum, int wrapRow, boolean selected, int y, int width) {
         final int x=0;
         String lineFormat = "%-"+(width-lineNumDigitCount-2)+"s";
         StringBuilder row = new StringBuilder();
-        String selectedLine = fileContents.get(lineNum);
+        final String text = fileContents.getLine(lineNum);
+        final String selectedLine = collapsedText(lineNum,text);
+        if(fileContents instanceof MergedLineSource) {
+            final MergedLineSource merged = (MergedLineSource)fileContents;
+            String name = wrapRow > 0 ? "" : merged.sourceName(merged.sourceOf(lineNum));
+            if(name.length() > tagWidth) {
+                name = name.substring(0,tagWidth);
+            }
+            row.append(String.format("%-"+tagWidth+"s ",name));
+        }
 
         if(showLineNumbers) {
-            String numberFormat = "%"+lineNumDigitCount+"d: ";
-            row.append(String.format(numberFormat,lineNum+1));
-            if(horzOffset < selectedLine.length()) {
-                row.append(String.format(lineFormat,selectedLine.substring(horzOffset)));
+            if(wrapRow > 0) {
+                row.append(String.format("%"+(lineNumDigitCount+2)+"s",""));
+            } else {
+                String numberFormat = "%"+lineNumDigitCount+"d: ";
+                row.append(String.format(numberFormat,lineNum+1));
             }
+        }
+        final int prefixLength = row.length();     //don't highlight over the tag or line number
+        final int textStart;                        //where the line's first character would be in the row
+        if(wrapping) {
+            final int[] starts = wrapIndex().rowStarts(lineNum);
+            final int from = starts[wrapRow];
+            textStart = prefixLength-from;
+            row.append(selectedLine,from,wrapRow+1 < starts.length ? starts[wrapRow+1] : selectedLine.length());
         } else {
+            textStart = prefixLength-horzOffset;
             if(horzOffset < selectedLine.length()) {
                 row.append(String.format(lineFormat,selectedLine.substring(horzOffset)));
             }
@@ -410,6 +978,11 @@ public class Garfield {
             row.delete(screenWidth-1,row.length());
         }
 
+        int[] spans = null;
+        if(matchSpans != null && lineFlags.isSet(lineNum,LINE_FOUND_FLAG)) {
+            spans = matchSpans.get(lineNum,text);
+        }
+
         console.move(x,y);
         int pair;      //line color pair
         if(selected) {
@@ -418,11 +991,11 @@ public class Garfield {
                 pair= FOLLOW_PAIR;
             }
             console.attron(pair);
-            console.printw(row.toString());
+            printRow(row,prefixLength,textStart,spans,pair);
             fillLine(width-row.length(),' ');
             console.attroff(pair);
 
-            if(lineFlags.get(lineNum) != 0) {
+            if(lineFlags.get(lineNum) != 0 && wrapRow == 0) {
                 //show first char as flag color
                 console.move(x,y);
                 pair = setLineColor(lineNum);
@@ -435,12 +1008,53 @@ public class Garfield {
             }
         } else {
             pair = setLineColor(lineNum);
-            console.printw(row.toString());
+            printRow(row,prefixLength,textStart,spans,pair);
             fillLine(width-row.length(),' ');
             console.attroff(pair);
         }
     }
 
+    /** The text of the line as it's shown, which when collapsed says how many lines of the entry are hidden. */
+    private String collapsedText(int lineNum,String text) {
+        if(collapsed) {
+            final BlockIndex index = blockIndex();
+            final int hidden = index.lineCount(index.indexOf(lineNum),linesInFile)-1;
+            if(hidden > 0) {
+                return text+"  [+"+hidden+" lines]";
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Prints the row in the line's color pair, with the parts the search matched in MATCH_PAIR.
+     *
+     * @param minStart Where the text starts in the row, nothing before it is highlighted.
+     * @param textStart Where the first character of the line is in the row, negative if scrolled to the right.
+     * @param spans Start and end of each match in the line, or null.
+     * @param pair The line's color pair, -1 for none. It's on when this returns.
+     */
+    private void printRow(StringBuilder row,int minStart,int textStart,int[] spans,int pair) {
+        int printed = 0;
+        for(int i = 0; spans != null && i+1 < spans.length; i += 2) {
+            final int start = Math.max(minStart,Math.min(row.length(),textStart+spans[i]));
+            final int end = Math.max(start,Math.min(row.length(),textStart+spans[i+1]));
+            if(start == end) {
+                continue;
+            }
+            console.printw(row.substring(printed,start));
+            console.attron(MATCH_PAIR);
+            console.printw(row.substring(start,end));
+            if(pair != -1) {
+                console.attron(pair);
+            } else {
+                console.attroff(MATCH_PAIR);
+            }
+            printed = end;
+        }
+        console.printw(row.substring(printed));
+    }
+
     /**
      * Changes the current color pair depending on the flags for the given line.
      *
@@ -467,10 +1081,10 @@ public class Garfield {
      */
     private void showStatusBar() {
         final String separator = " | ";
-        final int statusBarToggles = 2; //how many characters are we showing for the toggles below
+        final int statusBarToggles = 4; //how many characters are we showing for the toggles below
         final int activePair = MESSAGE_PAIR;
         console.attron(STATUS_BAR_PAIR);
-        final int currentLine = lineScreen + lineOffset + 1;   //when showing the user, first line is 1, not 0.
+        final int currentLine = currentLineNum() + 1;   //when showing the user, first line is 1, not 0.
         console.move(0,getMaxY());
 
         if(isWindows) {
@@ -481,6 +1095,17 @@ public class Garfield {
         console.move(0,getMaxY());
 
         String status = "Help 'h'"+separator+(horzOffset+1)+":"+currentLine+"/"+linesInFile+separator;
+        if(matches.size() > 0) {
+            final int match = matches.indexOf(currentLine-1);
+            if(match != -1) {
+                status += "Match "+(match+1)+" of "+matches.size()+separator;
+            } else {
+                status += matches.size()+" matches"+separator;
+            }
+        }
+        if(shownLag > 0) {
+            status += Diagnostics.bytes(shownLag)+" behind"+separator;   //the file grows faster then we can read it
+        }
         console.printw(status);
         if(ignoreCase) {
             console.attron(activePair);
@@ -498,8 +1123,45 @@ public class Garfield {
         if(following) {
             console.attron(STATUS_BAR_PAIR);
         }
+        if(filtering) {
+            console.attron(activePair);
+        }
+        console.printw("&");
+        if(filtering) {
+            console.attron(STATUS_BAR_PAIR);
+        }
+        if(wrapping) {
+            console.attron(activePair);
+        }
+        console.printw("W");
+        if(wrapping) {
+            console.attron(STATUS_BAR_PAIR);
+        }
+
+        String info = filename;
+        if(!mergedFiles.isEmpty()) {
+            info += " + "+mergedFiles.size()+" more";
+        }
+        if(searchJob != null) {
+            info = "Searching "+searchJob.getLinesScanned()+"/"+searchJob.getTotalLines()+" lines, "
+                    +searchJob.getHitCount()+" found - Esc to cancel";
+        }
+        final int infoWidth = Math.max(0,screenWidth-status.length()-statusBarToggles+separator.length());
+        console.printw(separator+info.substring(0,Math.min(info.length(),infoWidth)));
+        console.attroff(STATUS_BAR_PAIR);
+    }
 
-        console.printw(separator+filename.substring(0,Math.min(filename.length(),screenWidth-status.length()-statusBarToggles+separator.length())));
+    /**
+     * Shows how long the last frame, load and search took, and the heap used for the lines and flags, on the
+     * bottom line.
+     */
+    private void showDiagnostics() {
+        final int y = console.getHeight()-1;
+        console.attron(STATUS_BAR_PAIR);
+        clearLine(y);
+        console.move(0,y);
+        final String summary = diagnostics.summary(fileContents.heapBytes(),lineFlags.heapBytes());
+        console.printw(summary.substring(0,Math.min(summary.length(),Math.max(0,screenWidth-1))));
         console.attroff(STATUS_BAR_PAIR);
     }
 
@@ -511,9 +1173,7 @@ public class Garfield {
      */
     @SuppressWarnings("SameParameterValue")
     private void fillLine(int width, char ch) {
-        for(int i=0; i<width; i++) {
-            console.printw(""+ch);
-        }
+        console.fill(width,ch);
     }
 
     private void clearLine(int y) {
@@ -528,13 +1188,17 @@ public class Garfield {
         }
     }
 
-    /** The maximum displayable coordinate. */
+    /** The maximum displayable coordinate. The status bar is on this line, and the diagnostics under it. */
     public int getMaxY() {
-        return console.getHeight()-1;
+        return console.getHeight()-(showDiagnostics ? 2 : 1);
     }
 
     /** Move the cursor up one line, scrolls if we get to the top of the display and there is more file to display. */
     private void cursorUp() {
+        if(wrapping) {
+            showSelected(Math.max(0,lineOffset+lineScreen-1));
+            return;
+        }
         lineScreen--;
         if(lineScreen < 0) {
             scrollUp();
@@ -544,7 +1208,11 @@ public class Garfield {
 
     /** Move the cursor down one line, scrolls if we get to the bottom of the display and there is more file to display. */
     private void cursorDown() {
-        if(lineScreen+lineOffset+1 < linesInFile) {
+        if(wrapping) {
+            showSelected(Math.min(lineOffset+lineScreen+1,Math.max(0,viewLineCount()-1)));
+            return;
+        }
+        if(lineScreen+lineOffset+1 < viewLineCount()) {
             lineScreen++;
             if(lineScreen >= getMaxY()) {
                 lineScreen = getMaxY()-1;
@@ -555,6 +1223,9 @@ public class Garfield {
 
     /** Scroll left. Text moves to the right. */
     private void cursorLeft(boolean edge) {
+        if(wrapping) {
+            return;     //there is nothing off to the side
+        }
         if(edge) {
             horzOffset = 0;
         } else {
@@ -567,7 +1238,7 @@ public class Garfield {
 
     /** Scroll right. Text moves to the left. */
     private void cursorRight(boolean edge) {
-        if(fileMaxLineLength > screenWidth) {
+        if(fileMaxLineLength > screenWidth && !wrapping) {
             int digitCount = 0;
             if(showLineNumbers) {
                 //take into consideration the line number characters and ": " at the end
@@ -589,18 +1260,25 @@ public class Garfield {
         horzOffset = 0;
         lineOffset = 0;
         lineScreen = 0;
+        topRow = 0;
     }
 
     /** Move to the last line of the file. */
     void end() {
         horzOffset = 0;
+        if(wrapping) {
+            scrollToEnd();
+            lineScreen = Math.max(0,viewLineCount()-1)-lineOffset;
+            return;
+        }
         final int visibleLines = getMaxY()-1;
-        if(linesInFile <= visibleLines) {
+        final int viewLines = viewLineCount();
+        if(viewLines <= visibleLines) {
             //we don't need to scroll
             lineOffset = 0;
-            lineScreen = linesInFile - 1;
+            lineScreen = Math.max(0,viewLines - 1);
         } else {
-            lineOffset = linesInFile - visibleLines - 1;
+            lineOffset = viewLines - visibleLines - 1;
             lineScreen = getMaxY()-1;
         }
     }
@@ -608,6 +1286,17 @@ public class Garfield {
     /** Show the previous page of text. First line will be selected if needed. */
     void pageUp() {
         final int screenHeight = getMaxY();
+        if(wrapping) {
+            for(int i = 0; i < screenHeight-1; i++) {
+                scrollRowUp();
+            }
+            if(lineOffset == 0 && topRow == 0) {
+                lineScreen = 0;
+            } else {
+                lineScreen = Math.min(lineScreen,lastLineOnScreen()-lineOffset);
+            }
+            return;
+        }
         lineOffset -= screenHeight-1;
         if(lineOffset < 0) {
             lineOffset = 0;
@@ -618,20 +1307,36 @@ public class Garfield {
     /** Show the next page of text. Selected line will move to the end of the file if needed. */
     void pageDown() {
         final int screenHeight = getMaxY();
+        final int viewLines = viewLineCount();
+        if(wrapping) {
+            for(int i = 0; i < screenHeight-1; i++) {
+                scrollRowDown();
+            }
+            if(fixTopRow()) {
+                lineScreen = Math.max(0,viewLines-1)-lineOffset;    //at the end, select the last line
+            } else {
+                lineScreen = Math.min(lineScreen,lastLineOnScreen()-lineOffset);
+            }
+            return;
+        }
         lineOffset +=screenHeight-1;
-        if(lineOffset > linesInFile-screenHeight) {
-            lineOffset = linesInFile-screenHeight;
+        if(lineOffset > viewLines-screenHeight) {
+            lineOffset = Math.max(0,viewLines-screenHeight);
             lineScreen = screenHeight-1;
         }
     }
 
     /** Toggle the specified lines bookmark flag. */
     private void bookmark(int lineNum) {
+        if(lineNum < 0) {
+            return;
+        }
         if(lineFlags.isSet(lineNum,LINE_BOOKMARKED_FLAG)) {
             lineFlags.reset(lineNum,LINE_BOOKMARKED_FLAG);
         } else {
             lineFlags.set(lineNum,LINE_BOOKMARKED_FLAG);
         }
+        saveMarks();
     }
 
     /**
@@ -639,35 +1344,67 @@ public class Garfield {
      * @param dir DIRECTION_FORWARD for next, DIRECTION_REVERSE for previous.
      */
     void nextBookmark(int dir) {
-        int currentLine = currentLineNum();
-        if(currentLine+dir < linesInFile && currentLine+dir >= 0)
-            currentLine+=dir;
-
-        if(DIRECTION_FORWARD==dir) {
-            for(int i = currentLine+1; i<linesInFile; i++) {
-                if(lineFlags.isSet(i,LINE_BOOKMARKED_FLAG)) {
-                    scrollIntoView(i);
-                    return;
-                }
-            }
+        final int lineNum = nextFlaggedLine(LINE_BOOKMARKED_FLAG,dir);
+        if(lineNum != -1) {
+            scrollIntoView(lineNum);
         } else {
-            for(int i=currentLine-1; i>=0; i--) {
-                if(lineFlags.isSet(i,LINE_BOOKMARKED_FLAG)) {
-                    scrollIntoView(i);
-                    return;
-                }
-            }
+            showMsg("No more bookmarks found");
         }
-        showMsg("No more bookmarks found");
     }
 
     /**
-     * Scrolls the give filel line number into view. Puts it at the top usually.
-     * @param index file line number to display.
+     * Finds the closest line after/before the current line that has the flag set.
+     *
+     * @param flag The flag to look for.
+     * @param dir DIRECTION_FORWARD for next, DIRECTION_REVERSE for previous.
+     * @return the line number, or -1 if there isn't one.
      */
-    void scrollIntoView(int index)
+    private int nextFlaggedLine(int flag,int dir) {
+        final int currentLine = searchStart(dir);
+        int lineNum;
+        if(DIRECTION_FORWARD == dir) {
+            lineNum = lineFlags.nextSetLine(currentLine+1,flag);
+        } else {
+            lineNum = lineFlags.prevSetLine(currentLine-1,flag);
+        }
+        if(lineNum >= linesInFile) {
+            lineNum = -1;   //flags left over from a longer version of the file
+        }
+        return lineNum;
+    }
+
+    /**
+     * The line to look for the next or previous match or bookmark from. When collapsed it's the last line of the
+     * current entry going forward, so lines hidden in the entry are skipped, and its first line going back.
+     */
+    private int searchStart(int dir) {
+        final int currentLine = currentLineNum();
+        if(collapsed && currentLine >= 0 && DIRECTION_FORWARD == dir) {
+            final int nextEntry = blockIndex().next(currentLine);
+            return nextEntry == -1 ? linesInFile-1 : nextEntry-1;
+        }
+        return currentLine;     //when collapsed the current line is the first of its entry
+    }
+
+    /**
+     * Scrolls the give filel line number into view. Puts it at the top usually. When filtering and the line isn't
+     * one of the matches, the next match is used.
+     * @param lineNum file line number to display.
+     */
+    void scrollIntoView(int lineNum)
     {
+        final int index = viewLineNum(lineNum);
+        final int viewLines = viewLineCount();
         int height = getMaxY();
+        if(wrapping) {
+            if(index < lineOffset || index == lineOffset && topRow > 0 || rowsTo(index) > height) {
+                lineOffset = index;
+                topRow = 0;
+                fixTopRow();
+            }
+            lineScreen = index-lineOffset;
+            return;
+        }
         if(index >= lineOffset && index <= lineOffset+height)
         {
             //the found item is already visible
@@ -676,10 +1413,10 @@ public class Garfield {
         else
         {
             lineOffset = index;
-            if(lineOffset >= linesInFile -height)
+            if(lineOffset >= viewLines -height)
             {
-                lineScreen = index-(linesInFile-height);
-                lineOffset = linesInFile-height;
+                lineOffset = Math.max(0,viewLines-height);
+                lineScreen = index-lineOffset;
             }
             else
             {
@@ -697,17 +1434,270 @@ public class Garfield {
 
     /** Scroll one line down. */
     void scrollDown() {
-        if(linesInFile >= getMaxY()) {//make sure the file isn't less then a screen full
+        final int viewLines = viewLineCount();
+        if(viewLines >= getMaxY()) {//make sure the file isn't less then a screen full
             lineOffset++;
-            if(lineOffset >= linesInFile -getMaxY()) {
-                lineOffset = linesInFile - getMaxY();
+            if(lineOffset >= viewLines -getMaxY()) {
+                lineOffset = viewLines - getMaxY();
+            }
+        }
+    }
+
+    /**
+     * Where the lines break into rows when wrapping. Made again when the width for the text changes, like when line
+     * numbers are turned on or the file gets another digit of lines.
+     */
+    private WrapIndex wrapIndex() {
+        int prefixWidth = 0;
+        if(fileContents instanceof MergedLineSource) {
+            prefixWidth += tagWidth+1;
+        }
+        if(showLineNumbers) {
+            prefixWidth += lineNumDigitCount+2;
+        }
+        final int width = Math.max(1,screenWidth-1-prefixWidth);
+        if(wrapIndex == null || wrapIndex.getWidth() != width) {
+            wrapIndex = new WrapIndex(lineNum -> collapsedText(lineNum,fileContents.getLine(lineNum)),width);
+        }
+        return wrapIndex;
+    }
+
+    /** Number of screen rows the index'th line being shown takes up when wrapping. */
+    private int rowCount(int index) {
+        return wrapIndex().rowCount(fileLineNum(index));
+    }
+
+    /**
+     * Number of rows from the top of the screen to the end of the index'th line being shown. Lines more then a
+     * screen down are past the bottom whatever their size, so they aren't counted, and it's quick for a line that is
+     * far away.
+     */
+    private int rowsTo(int index) {
+        final int height = getMaxY();
+        int rows = -topRow;
+        for(int i = lineOffset; i <= index && i <= lineOffset+height; i++) {
+            rows += rowCount(i);
+        }
+        return rows;
+    }
+
+    /** The last line being shown that starts on the screen, when wrapping. */
+    private int lastLineOnScreen() {
+        final int height = getMaxY();
+        final int viewLines = viewLineCount();
+        int index = lineOffset;
+        int rows = rowCount(index)-topRow;
+        while(index+1 < viewLines && rows < height) {
+            index++;
+            rows += rowCount(index);
+        }
+        return index;
+    }
+
+    /** Selects the index'th line being shown when wrapping, scrolling a row at a time until all of it is in view. */
+    private void showSelected(int index) {
+        final int height = getMaxY();
+        if(viewLineCount() == 0) {
+            return;
+        }
+        if(index < lineOffset || index == lineOffset && topRow > 0 || index-lineOffset >= height) {
+            lineOffset = index;
+            topRow = 0;
+        } else {
+            //only scroll far enough for the whole line to be seen, the top of it if it's taller then the screen
+            int over = Math.min(rowsTo(index)-height,rowsTo(index-1));
+            for(; over > 0; over--) {
+                scrollRowDown();
             }
         }
+        fixTopRow();
+        lineScreen = index-lineOffset;
     }
 
-    /** Returns the current file line number. */
+    /** Moves the top of the screen up one row, when wrapping. */
+    private void scrollRowUp() {
+        if(topRow > 0) {
+            topRow--;
+        } else if(lineOffset > 0) {
+            lineOffset--;
+            topRow = rowCount(lineOffset)-1;
+        }
+    }
+
+    /** Moves the top of the screen down one row, when wrapping. Can go past the end, fixTopRow() puts it back. */
+    private void scrollRowDown() {
+        if(lineOffset >= viewLineCount()) {
+            return;
+        }
+        topRow++;
+        if(topRow >= rowCount(lineOffset)) {
+            lineOffset++;
+            topRow = 0;
+        }
+    }
+
+    /**
+     * Makes sure the screen isn't scrolled past the point where the last line is at the bottom, when wrapping. Only
+     * the rows that fit on the screen are looked at.
+     *
+     * @return true if the last line is at the bottom of the screen, or above it when the file is short.
+     */
+    private boolean fixTopRow() {
+        final int viewLines = viewLineCount();
+        if(lineOffset >= viewLines) {
+            lineOffset = Math.max(0,viewLines-1);   //the file got shorter
+            topRow = 0;
+        } else if(topRow >= rowCount(lineOffset)) {
+            topRow = rowCount(lineOffset)-1;        //the line got narrower
+        }
+        if(rowsTo(viewLines-1) > getMaxY()) {
+            return false;
+        }
+        final int selected = lineOffset+lineScreen;
+        scrollToEnd();
+        lineScreen = selected-lineOffset;
+        return true;
+    }
+
+    /** Scrolls so the last row of the last line is at the bottom of the screen, when wrapping. */
+    private void scrollToEnd() {
+        final int height = getMaxY();
+        int index = viewLineCount();
+        int rows = 0;
+        while(index > 0 && rows < height) {
+            index--;
+            rows += rowCount(index);
+        }
+        lineOffset = index;
+        topRow = Math.max(0,rows-height);
+    }
+
+    /** Returns the current file line number, or -1 if there are no lines to show. */
     int currentLineNum() {
-        return lineOffset + lineScreen;
+        final int index = lineOffset + lineScreen;
+        if(index >= viewLineCount()) {
+            return viewLineCount() == 0 ? -1 : fileLineNum(viewLineCount()-1);
+        }
+        return fileLineNum(index);
+    }
+
+    /**
+     * Number of lines that can be shown. This is the number of lines in the file, or the number of matches when
+     * filtering. lineOffset and lineScreen count these lines, not lines of the file.
+     */
+    private int viewLineCount() {
+        if(filtering) {
+            return matches.size();
+        } else if(collapsed) {
+            return blockIndex().size();
+        }
+        return linesInFile;
+    }
+
+    /** The file line number of the index'th line being shown. */
+    private int fileLineNum(int index) {
+        if(filtering) {
+            return matches.get(index);
+        } else if(collapsed) {
+            return blockIndex().get(index);
+        }
+        return index;
+    }
+
+    /**
+     * Which of the lines being shown is the file line. When filtering and the line didn't match it's the next
+     * match, when collapsed it's the entry the line is part of.
+     */
+    private int viewLineNum(int lineNum) {
+        if(filtering) {
+            return Math.min(matches.position(lineNum),Math.max(0,matches.size()-1));
+        } else if(collapsed) {
+            return blockIndex().indexOf(lineNum);
+        }
+        return lineNum;
+    }
+
+    /** Turn filtering on or off, keeping the current line in view. */
+    void toggleFilter() {
+        if(!filtering && matches.size() == 0) {
+            showMsg("Nothing to filter on, search first");
+            return;
+        }
+        final int lineNum = currentLineNum();
+        filtering = !filtering;
+        collapsed = false;
+        showViewFrom(lineNum);
+    }
+
+    /** Turn showing only the first line of each log entry on or off, keeping the current line in view. */
+    void toggleCollapsed() {
+        final int lineNum = currentLineNum();
+        collapsed = !collapsed;
+        filtering = false;
+        showViewFrom(lineNum);
+    }
+
+    /** Show or hide the diagnostics under the status bar. The file gets a line less while they're shown. */
+    void toggleDiagnostics() {
+        showDiagnostics = !showDiagnostics;
+        console.clear();
+        if(following) {
+            end();
+        } else if(wrapping) {
+            showSelected(lineOffset+lineScreen);
+        } else if(lineScreen >= getMaxY()) {
+            lineOffset += lineScreen-getMaxY()+1;
+            lineScreen = getMaxY()-1;
+        }
+    }
+
+    /** Turn wrapping long lines onto the rows below on or off, keeping the current line in view. */
+    void toggleWrap() {
+        final int lineNum = currentLineNum();
+        wrapping = !wrapping;
+        horzOffset = 0;
+        showViewFrom(lineNum);
+    }
+
+    /**
+     * Jump to the start of the next/previous log entry.
+     * @param dir DIRECTION_FORWARD for next, DIRECTION_REVERSE for previous.
+     */
+    void nextBlock(int dir) {
+        final int currentLine = currentLineNum();
+        final int lineNum = dir == DIRECTION_FORWARD ? blockIndex().next(currentLine) : blockIndex().prev(currentLine);
+        if(lineNum != -1) {
+            scrollIntoView(lineNum);
+        } else {
+            showMsg("No more log entries");
+        }
+    }
+
+    /**
+     * The log entry index. The first time it's needed the whole file is indexed, after that it's kept up to date
+     * as the file grows.
+     */
+    private BlockIndex blockIndex() {
+        if(blocks == null) {
+            console.printCenterX(getMaxY(),"Finding log entries");
+            console.refresh();
+            blocks = new BlockIndex(blockPattern);
+            blocks.update(fileContents,0,linesInFile);
+        }
+        return blocks;
+    }
+
+    /** Switched between showing all lines, matches, or entries. Start from the top, then show lineNum. */
+    private void showViewFrom(int lineNum) {
+        lineOffset = 0;
+        lineScreen = 0;
+        topRow = 0;
+        console.clear();
+        if(following) {
+            end();
+        } else if(lineNum >= 0) {
+            scrollIntoView(lineNum);
+        }
     }
 
     /**
@@ -725,7 +1715,7 @@ public class Garfield {
         console.refresh();
         console.timeout(TIMEOUT_BLOCK);
         console.getch();
-        console.timeout(TIMEOUT_DELAY);
+        console.timeout(keyDelay());
     }
 
     void showMultiLineMsg(String title,String msg) {
@@ -746,7 +1736,7 @@ public class Garfield {
         console.timeout(TIMEOUT_BLOCK);
         console.getch();
         console.clear();
-        console.timeout(TIMEOUT_DELAY);
+        console.timeout(keyDelay());
     }
 
     /** Toggle if we show line numbers. */
@@ -764,8 +1754,10 @@ public class Garfield {
     void toggleFollowMode() {
         if(following) {
             following = false;
+            stopWatching();
         } else {
             following = true;
+            startWatching();
             end();
         }
     }
@@ -785,119 +1777,138 @@ public class Garfield {
         }
 
         console.refresh();
-        query = readLine(msg);
+        final String input = readLine(msg);
+        if(input == null) {
+            console.attroff(MESSAGE_PAIR);
+            return;     //cancelled, the last search stays
+        }
+        query = input;
         queryWasRegex = useRegex;
         console.attroff(MESSAGE_PAIR);
-        lineFlags.reset(LINE_FOUND_FLAG);   //clear the previous search results
         console.move(x,y);
         console.clrtoeol();
-        console.printCenterX(y,"Searching");
-        console.refresh();
 
-        if(query.length() > 0) {
-            try {
-                boolean found = searchSetFlags(query,useRegex);
+        try {
+            startSearch(true);
+        } catch(PatternSyntaxException e) {
+            query = null;   //don't keep trying to use it
+            showMultiLineMsg("Regular expression error - PRESS ENTER",e.getMessage());
+        }
+    }
+
+    /**
+     * Clears the previous search results and starts searching the whole file for the current query in the
+     * background. Results show up as the search finds them, see collectSearchResults().
+     *
+     * @param jumpToMatch true to scroll to the first match after the current line, and report if there wasn't one.
+     * @throws PatternSyntaxException if the query is a bad regular expression.
+     */
+    private void startSearch(boolean jumpToMatch) throws PatternSyntaxException {
+        cancelSearch();
+        lineFlags.reset(LINE_FOUND_FLAG);   //clear the previous search results
+        matches.clear();
+        if(filtering) {
+            home();     //nothing to show until the search finds something
+            console.clear();
+        }
+        matchSpans = null;
+        if(query != null && query.length() > 0) {
+            SearchEngine engine = new SearchEngine(query,queryWasRegex,ignoreCase);
+            matchSpans = new MatchSpans(engine);
+            searchJumpToMatch = jumpToMatch;
+            searchJob = new SearchJob(engine,fileContents,0,linesInFile).start();
+        }
+    }
+
+    /** Flags the lines the running search found since last time, and reports when it's finished. */
+    private void collectSearchResults() {
+        if(searchJob == null) {
+            return;
+        }
+        final boolean done = searchJob.isDone();   //check before taking, so no hits are missed
+        IntList hits = searchJob.takeHits();
+        dirty = true;   //hits, or at least how far it got
+        final int currentLine = currentLineNum();
+        for(int i = 0; i < hits.size(); i++) {
+            final int lineNum = hits.get(i);
+            lineFlags.set(lineNum,LINE_FOUND_FLAG);
+            matches.add(lineNum);
+            if(searchJumpToMatch && lineNum > currentLine) {
+                searchJumpToMatch = false;
+                scrollIntoView(lineNum);
+            }
+        }
+        if(done) {
+            final SearchJob job = searchJob;
+            searchJob = null;
+            diagnostics.search(job.getElapsedNanos(),job.getLinesScanned(),job.getHitCount());
+            if(job.getError() != null) {
                 showFile();
-                console.refresh();
-                if(found) {
-                    ArrayList<Integer> flaggedLines = new ArrayList<>(lineFlags.keySet());
-                    Collections.sort(flaggedLines);
-                    if(!scrollMatchedLineIntoView(flaggedLines,DIRECTION_FORWARD)) {
-                        showMsg("No more matches");
-                    }
-                } else {
-                    showMsg("Not found");
-                }
-            } catch(PatternSyntaxException e) {
-                showMultiLineMsg("Regular expression error - PRESS ENTER",e.getMessage());
+                showMsg("Search stopped - "+searchError(job.getError()));
+            } else if(searchJumpToMatch && !job.isCancelled()) {
+                showFile();
+                showMsg(job.getHitCount() == 0 ? "Not found" : "No more matches");
             }
         }
     }
 
+    /** Says why a search failed, in a way that fits on the message line. */
+    private static String searchError(Throwable error) {
+        if(error instanceof StackOverflowError) {
+            return "the regex is too complex for a line that long";
+        }
+        return error.getMessage() != null ? error.getMessage() : error.toString();
+    }
+
+    /** Stops the running search, if there is one. Whatever it found so far stays flagged. */
+    private void cancelSearch() {
+        if(searchJob != null) {
+            searchJob.cancel();
+            collectSearchResults();
+        }
+    }
+
     /**
      * Search for the next/previous match.
      * @param direction 1 to move forward, -1 to go in reverse.
      */
     private void searchAgain(int direction) {
-        ArrayList<Integer> flaggedLines = new ArrayList<>(lineFlags.keySet());  //all lines with ANY flag
-        Collections.sort(flaggedLines);
-        if(!scrollMatchedLineIntoView(flaggedLines,direction)) {
-            showMsg("No more matches");
+        final int currentLine = searchStart(direction);
+        final int lineNum = direction == DIRECTION_FORWARD ? matches.next(currentLine) : matches.prev(currentLine);
+        if(lineNum != -1) {
+            scrollIntoView(lineNum);
+        } else {
+            showMsg(searchJob != null ? "No more matches yet, still searching" : "No more matches");
         }
     }
 
     /**
-     * If we find a matching line in the direction give, scroll that line info view. If we don't, nothing happens.
+     * Flags the lines that match the query, starting at the specified line.
      *
-     * @param list Line flag keys to look through.
-     * @param direction 1 to go forward, -1 for reverse.
-     * @return true if a match was found, false otherwise.
+     * @param query Text or regular expression to look for.
+     * @param useRegex true if query is a regular expression.
+     * @param fromLine First line to search, lines before it are left alone.
+     * @return true if any line matched.
      */
-    private boolean scrollMatchedLineIntoView(List<Integer> list,int direction) {
-        final int currentLine = currentLineNum();
-
-        if(direction == DIRECTION_FORWARD) {
-            for(final int key : list) {
-                if(lineFlags.isSet(key,LINE_FOUND_FLAG)) {  //looking for lines with the found flag on it
-                    if(key > currentLine) {
-                        scrollIntoView(key);
-                        return true;
-                    }
-                }
-            }
-        } else {
-            for(int i = list.size()-1; i >= 0; i--) {
-                final int key = list.get(i);
-                if(lineFlags.isSet(key,LINE_FOUND_FLAG)) {  //looking for lines with the found flag on it
-                    if(key < currentLine) {
-                        scrollIntoView(key);
-                        return true;
-                    }
-                }
-            }
+    private boolean searchSetFlags(String query,boolean useRegex,int fromLine) throws PatternSyntaxException {
+        if(query == null || query.length() == 0) {
+            return false;
         }
-        return false;
-    }
-
-    private boolean searchSetFlags(String query,boolean useRegex) throws PatternSyntaxException {
-        boolean found = false;
-        if(query != null && query.length() > 0) {
-            for(int i = 0; i < fileContents.size(); i++) {
-                String row;
-                String qry;
-                if(ignoreCase) {
-                    row = fileContents.get(i).toLowerCase();
-                    qry = query.toLowerCase();
-                } else {
-                    row = fileContents.get(i);
-                    qry = query;
-                }
-                if(useRegex) {
-                    final Pattern pattern;
-                    final Matcher m;
-                    if(ignoreCase) {
-                        pattern = Pattern.compile(qry);
-                        m = pattern.matcher(row.toLowerCase());
-                    } else {
-                        pattern = Pattern.compile(qry);
-                        m = pattern.matcher(row);
-                    }
-                    if(m.find()) {
-                        lineFlags.set(i,LINE_FOUND_FLAG);
-                        found = true;
-                    }
-                } else {
-                    if(row.contains(qry)) {
-                        lineFlags.set(i,LINE_FOUND_FLAG);
-                        found = true;
-                    }
-                }
-            }
+        final long start = System.nanoTime();
+        IntList hits = new SearchEngine(query,useRegex,ignoreCase).search(fileContents,fromLine,linesInFile);
+        diagnostics.search(System.nanoTime()-start,Math.max(0,linesInFile-fromLine),hits.size());
+        for(int i = 0; i < hits.size(); i++) {
+            lineFlags.set(hits.get(i),LINE_FOUND_FLAG);
+            matches.add(hits.get(i));
         }
-        return found;
+        return !hits.isEmpty();
     }
 
-    /** Reads in a line of text, and returns the text string. Assumes you are using the bottom of the screen. */
+    /**
+     * Reads in a line of text, and returns the text string. Assumes you are using the bottom of the screen.
+     *
+     * @return the text, or null if the keys ran out before Enter, which only happens when they come from a script.
+     */
     private String readLine(String msg) {
         final int x=0,y=getMaxY();
         StringBuilder buff = new StringBuilder();
@@ -907,7 +1918,10 @@ public class Garfield {
         console.printw(msg);
         do {
             ch = console.getch();
-            if(ch == KEY_BACKSPACE) {
+            if(ch == Terminal.ERR) {
+                console.timeout(keyDelay());
+                return null;
+            } else if(ch == KEY_BACKSPACE) {
                 if(buff.length()>0) {
                     buff.deleteCharAt(buff.length()-1);
                     clearLine(y);
@@ -920,7 +1934,7 @@ public class Garfield {
                 console.printw(letter);
             }
         } while(ch != KEY_ENTER && ch != KEY_CR);
-        console.timeout(TIMEOUT_DELAY); //back to normal
+        console.timeout(keyDelay()); //back to normal
         return buff.toString();
     }
 
@@ -932,7 +1946,7 @@ public class Garfield {
         console.refresh();
         console.move(x,y);
         String lineInput = readLine("Goto line: ");
-        if(lineInput.length() > 0) {
+        if(lineInput != null && lineInput.length() > 0) {
             int lineNum;
             try {
                 lineNum = Integer.parseInt(lineInput);
@@ -948,10 +1962,40 @@ public class Garfield {
         console.attroff(MESSAGE_PAIR);
     }
 
+    /**
+     * Asks the user for a time, and scrolls the first line at or after it into view. If only a time of day is given,
+     * the date of the current line is used.
+     */
+    private void gotoTime() {
+        console.attron(MESSAGE_PAIR);
+        final int x=0,y=getMaxY();
+        clearLine(y);
+        console.refresh();
+        console.move(x,y);
+        String input = readLine("Goto time: ");
+        console.attroff(MESSAGE_PAIR);
+        if(input != null && input.length() > 0) {
+            long reference = TimestampIndex.timeAtOrBefore(fileContents,currentLineNum());
+            if(reference == Timestamps.NO_TIME) {
+                reference = TimestampIndex.timeAtOrAfter(fileContents,Math.max(0,currentLineNum()));
+            }
+            final long time = Timestamps.parseInput(input,reference);
+            if(time == Timestamps.NO_TIME) {
+                showMsg("Use HH:mm, HH:mm:ss or yyyy-MM-dd HH:mm:ss");
+                return;
+            }
+            final int lineNum = times != null ? times.find(time) : TimestampIndex.bisect(fileContents,time);
+            if(lineNum == -1) {
+                showMsg("Nothing logged at or after "+Timestamps.format(time));
+            } else {
+                scrollIntoView(lineNum);
+            }
+        }
+    }
+
     private void toggleIgnoreCase() {
         ignoreCase = !ignoreCase;
-        lineFlags.reset(LINE_FOUND_FLAG);   //clear the previous search results
-        searchSetFlags(query,queryWasRegex);
+        startSearch(false);
         console.clear();
     }
 
@@ -964,22 +2008,30 @@ public class Garfield {
         console.printw("q                           Quit\n");
         console.printw("r                           Reload file and refresh screen\n");
         console.printw("g                           Goto line\n");
+        console.printw("t                           Goto time\n");
         console.printw("o                           Show line numbers\n");
+        console.printw("d                           Show diagnostics\n");
         console.printw("\n");
         console.printw("Navigation:\n");
         console.printw("j/k Down-Arrow/Up Arrow     Down/Up one line\n");
         console.printw("</>                         Scroll to top/bottom of file\n");
         console.printw("[/] Left-Arrow/Right-Arrow  Scroll left/right\n");
         console.printw("{/}                         Scroll to left/right edge\n");
+        console.printw("w                           Wrap long lines\n");
         console.printw("\n");
         console.printw("Search / Bookmarks:\n");
         console.printw("(Clear a search by typing '/' then ENTER without a query)\n");
         console.printw("/ Search             ? Regular expression search\n");
         console.printw("n Next match         N Previous match   i Ignore case (default)\n");
+        console.printw("Esc Cancel a search that is still running\n");
         console.printw("m Mark a bookmark    b Next bookmark    B Previous bookmark\n");
+        console.printw("& Only show the lines that matched the search\n");
+        console.printw("\n");
+        console.printw("Log entries:\n");
+        console.printw("e Next entry         E Previous entry   z Show only the first line of each entry\n");
         showMsg("To continue");
         console.getch();
-        console.timeout(TIMEOUT_DELAY);
+        console.timeout(keyDelay());
         console.clear();
     }
 }
@@ -0,0 +1,487 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a gzip file one deflate block at a time. java.util.zip.Inflater can't say where the blocks are, and
+ * that's what is needed to be able to start decompressing in the middle of a file later: the bit position of a
+ * block, plus the 32K of output before it, which later blocks can copy from. Between blocks, bitPosition() and
+ * window() give exactly that.
+ *
+ * Files made of several gzip members, like ones that were appended to, or made by pigz or bgzip, are handled by
+ * calling startMember() until it returns false. resume() starts at one of those block positions instead, to
+ * decompress from a checkpoint.
+ *
+ * Output goes to the Output given to the constructor, in chunks.
+ */
+public class GzipDecoder {
+    /** How far back a match can copy from. */
+    public static final int WINDOW_SIZE = 32768;
+
+    private static final int BUFFER_SIZE = 1<<18;
+    private static final int INPUT_SIZE = 1<<16;
+    private static final int MAX_MATCH = 258;
+    private static final int MAX_BITS = 15;
+    private static final int FAST_BITS = 10;
+    private static final int FAST_MASK = (1<<FAST_BITS)-1;
+
+    private static final short[] LENGTH_BASE = {
+            3,4,5,6,7,8,9,10,11,13,15,17,19,23,27,31,35,43,51,59,67,83,99,115,131,163,195,227,258};
+    private static final byte[] LENGTH_EXTRA = {
+            0,0,0,0,0,0,0,0,1,1,1,1,2,2,2,2,3,3,3,3,4,4,4,4,5,5,5,5,0};
+    private static final int[] DIST_BASE = {
+            1,2,3,4,5,7,9,13,17,25,33,49,65,97,129,193,257,385,513,769,1025,1537,2049,3073,4097,6145,8193,12289,
+            16385,24577};
+    private static final byte[] DIST_EXTRA = {
+            0,0,0,0,1,1,2,2,3,3,4,4,5,5,6,6,7,7,8,8,9,9,10,10,11,11,12,12,13,13};
+    private static final byte[] CODE_LENGTH_ORDER = {16,17,18,0,8,7,9,6,10,5,11,4,12,3,13,2,14,1,15};
+
+    private static final int FLAG_HCRC = 2;
+    private static final int FLAG_EXTRA = 4;
+    private static final int FLAG_NAME = 8;
+    private static final int FLAG_COMMENT = 16;
+
+    /** Where the decompressed bytes go. */
+    public interface Output {
+        void write(byte[] bytes,int offset,int length) throws IOException;
+    }
+
+    private final InputStream in;
+    private final Output output;
+    private final byte[] input = new byte[INPUT_SIZE];
+    private int inputPos;
+    private int inputLimit;
+    private long inputBase;             //bytes read before the current input buffer
+    private int padding;                //zero bytes made up after the end of the file
+    private long bitBuffer;
+    private int bitCount;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];  //output, with at least WINDOW_SIZE bytes of history
+    private int pos;
+    private int flushed;                //buffer up to here was sent to output
+    private long flushedSize;           //bytes sent to output
+    private long memberStart;
+    private boolean firstMember = true;
+    private final CRC32 crc = new CRC32();
+
+    private final byte[] lengths = new byte[320];
+    private final Huffman litLen = new Huffman(288);
+    private final Huffman dist = new Huffman(32);
+    private final Huffman codeLen = new Huffman(19);
+    private final Huffman fixedLitLen = new Huffman(288);
+    private final Huffman fixedDist = new Huffman(32);
+
+    public GzipDecoder(InputStream in,Output output) throws ZipException {
+        this.in = in;
+        this.output = output;
+        byte[] fixed = new byte[288];
+        Arrays.fill(fixed,0,144,(byte)8);
+        Arrays.fill(fixed,144,256,(byte)9);
+        Arrays.fill(fixed,256,280,(byte)7);
+        Arrays.fill(fixed,280,288,(byte)8);
+        fixedLitLen.build(fixed,0,288);
+        Arrays.fill(fixed,0,30,(byte)5);
+        fixedDist.build(fixed,0,30);
+    }
+
+    /**
+     * Reads the gzip header of the next member.
+     *
+     * @return false at the end of the file.
+     * @throws ZipException if the file doesn't start with a gzip header.
+     */
+    public boolean startMember() throws IOException {
+        final int id1 = byteOrEnd();
+        final int id2 = id1 < 0 ? -1 : byteOrEnd();
+        if(id1 != 0x1f || id2 != 0x8b) {
+            if(firstMember) {
+                throw new ZipException("Not in GZIP format");
+            }
+            return false;   //padding or junk after the last member, gzip ignores it too
+        }
+        if(readByte() != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        final int flags = readByte();
+        for(int i = 0; i < 6; i++) {
+            readByte();     //time, extra flags and os
+        }
+        if((flags&FLAG_EXTRA) != 0) {
+            int length = readByte()|readByte()<<8;
+            while(length-- > 0) {
+                readByte();
+            }
+        }
+        if((flags&FLAG_NAME) != 0) {
+            while(readByte() != 0) {
+                //skip the name
+            }
+        }
+        if((flags&FLAG_COMMENT) != 0) {
+            while(readByte() != 0) {
+                //skip the comment
+            }
+        }
+        if((flags&FLAG_HCRC) != 0) {
+            readByte();
+            readByte();
+        }
+        firstMember = false;
+        memberStart = outputSize();
+        crc.reset();
+        return true;
+    }
+
+    /**
+     * Starts in the middle of a member, at a block that was found earlier, instead of at a gzip header. The input
+     * has to start with the byte the block starts in. Blocks can then be decoded as usual, but finishMember() can't
+     * be used, since the CRC only covers what was decoded.
+     *
+     * @param skipBits Bits of the first byte that come before the block, 0 to 7.
+     * @param window The output before the block, up to WINDOW_SIZE bytes of it, for matches to copy from.
+     */
+    public void resume(int skipBits,byte[] window) throws IOException {
+        bits(skipBits);
+        final int length = Math.min(window.length,WINDOW_SIZE);
+        System.arraycopy(window,window.length-length,buffer,0,length);
+        pos = length;
+        flushed = length;   //already sent, it's only there to copy from
+        memberStart = -length;
+        firstMember = false;
+    }
+
+    /**
+     * Decodes the next deflate block of the member.
+     *
+     * @return true if there are more blocks in the member, false if that was the last one.
+     */
+    public boolean decodeBlock() throws IOException {
+        final boolean last = bits(1) == 1;
+        switch(bits(2)) {
+            case 0: stored(); break;
+            case 1: codes(fixedLitLen,fixedDist); break;
+            case 2: dynamic(); codes(litLen,dist); break;
+            default: throw new ZipException("Bad block type");
+        }
+        if(padding > 0 && bitPosition() > (inputBase+inputLimit-padding)*8) {
+            throw new EOFException("Unexpected end of gzip file");
+        }
+        return !last;
+    }
+
+    /** Reads the trailer after the last block, and checks the data against it. */
+    public void finishMember() throws IOException {
+        flush();
+        bits(bitCount&7);   //the trailer starts on a byte boundary
+        final long expectedCrc = readInt();
+        final long expectedSize = readInt();
+        if(expectedCrc != crc.getValue()) {
+            throw new ZipException("Corrupt gzip file, CRC doesn't match");
+        }
+        if(expectedSize != ((outputSize()-memberStart)&0xFFFFFFFFL)) {
+            throw new ZipException("Corrupt gzip file, size doesn't match");
+        }
+    }
+
+    /** Number of bits of the file read so far. Between blocks, this is where the next block starts. */
+    public long bitPosition() {
+        return (inputBase+inputPos)*8-bitCount;
+    }
+
+    /** Number of bytes decompressed so far. */
+    public long outputSize() {
+        return flushedSize+pos-flushed;
+    }
+
+    /** The last WINDOW_SIZE bytes decompressed, or all of them if there haven't been that many yet. */
+    public byte[] window() {
+        return Arrays.copyOfRange(buffer,Math.max(0,pos-WINDOW_SIZE),pos);
+    }
+
+    private void stored() throws IOException {
+        bits(bitCount&7);
+        final int length = bits(16);
+        if((bits(16)^0xFFFF) != length) {
+            throw new ZipException("Bad stored block length");
+        }
+        for(int i = 0; i < length; i++) {
+            if(pos == BUFFER_SIZE) {
+                slide();
+            }
+            buffer[pos++] = (byte)bits(8);
+        }
+    }
+
+    private void dynamic() throws IOException {
+        final int litLenCount = bits(5)+257;
+        final int distCount = bits(5)+1;
+        final int codeCount = bits(4)+4;
+        if(litLenCount > 286 || distCount > 30) {
+            throw new ZipException("Bad dynamic block counts");
+        }
+        Arrays.fill(lengths,0,19,(byte)0);
+        for(int i = 0; i < codeCount; i++) {
+            lengths[CODE_LENGTH_ORDER[i]] = (byte)bits(3);
+        }
+        codeLen.build(lengths,0,19);
+
+        final int total = litLenCount+distCount;
+        int index = 0;
+        while(index < total) {
+            final int symbol = decode(codeLen);
+            if(symbol < 16) {
+                lengths[index++] = (byte)symbol;
+                continue;
+            }
+            byte length = 0;
+            int repeat;
+            if(symbol == 16) {
+                if(index == 0) {
+                    throw new ZipException("Repeat with no first length");
+                }
+                length = lengths[index-1];
+                repeat = 3+bits(2);
+            } else if(symbol == 17) {
+                repeat = 3+bits(3);
+            } else {
+                repeat = 11+bits(7);
+            }
+            if(index+repeat > total) {
+                throw new ZipException("Too many lengths");
+            }
+            Arrays.fill(lengths,index,index+repeat,length);
+            index += repeat;
+        }
+        if(lengths[256] == 0) {
+            throw new ZipException("No end of block code");
+        }
+        litLen.build(lengths,0,litLenCount);
+        dist.build(lengths,litLenCount,distCount);
+    }
+
+    /** Decodes literals and matches up to the end of block code. */
+    private void codes(Huffman lit,Huffman distance) throws IOException {
+        for(;;) {
+            if(pos > BUFFER_SIZE-MAX_MATCH) {
+                slide();
+            }
+            int symbol = decode(lit);
+            if(symbol < 256) {
+                buffer[pos++] = (byte)symbol;
+            } else if(symbol == 256) {
+                return;
+            } else {
+                symbol -= 257;
+                if(symbol >= LENGTH_BASE.length) {
+                    throw new ZipException("Bad length code");
+                }
+                final int length = LENGTH_BASE[symbol]+bits(LENGTH_EXTRA[symbol]);
+                final int distSymbol = decode(distance);
+                if(distSymbol >= DIST_BASE.length) {
+                    throw new ZipException("Bad distance code");
+                }
+                final int back = DIST_BASE[distSymbol]+bits(DIST_EXTRA[distSymbol]);
+                if(back > outputSize()-memberStart) {
+                    throw new ZipException("Distance too far back");
+                }
+                final int from = pos-back;
+                if(back >= length) {
+                    System.arraycopy(buffer,from,buffer,pos,length);
+                } else {
+                    for(int i = 0; i < length; i++) {
+                        buffer[pos+i] = buffer[from+i];     //overlapping copy repeats the last bytes
+                    }
+                }
+                pos += length;
+            }
+        }
+    }
+
+    private int decode(Huffman h) throws IOException {
+        need(MAX_BITS);
+        final int entry = h.fast[(int)bitBuffer&FAST_MASK];
+        if(entry != 0) {
+            drop(entry&0xF);
+            return entry>>>4;
+        }
+        //longer code then the table covers, walk the code one bit at a time
+        int code = 0;
+        int first = 0;
+        int index = 0;
+        long bits = bitBuffer;
+        for(int len = 1; len <= MAX_BITS; len++) {
+            code |= (int)(bits&1);
+            bits >>>= 1;
+            final int count = h.count[len];
+            if(code-count < first) {
+                drop(len);
+                return h.symbol[index+code-first];
+            }
+            index += count;
+            first = (first+count)<<1;
+            code <<= 1;
+        }
+        throw new ZipException("Bad huffman code");
+    }
+
+    /** Sends what was decoded to the output. Otherwise that only happens when the buffer is full, or at the end. */
+    public void flush() throws IOException {
+        if(pos > flushed) {
+            crc.update(buffer,flushed,pos-flushed);
+            output.write(buffer,flushed,pos-flushed);
+            flushedSize += pos-flushed;
+            flushed = pos;
+        }
+    }
+
+    /** Flushes, and moves the last WINDOW_SIZE bytes to the front of the buffer to make room. */
+    private void slide() throws IOException {
+        flush();
+        final int keep = Math.min(pos,WINDOW_SIZE);
+        System.arraycopy(buffer,pos-keep,buffer,0,keep);
+        pos = keep;
+        flushed = keep;
+    }
+
+    private int bits(int count) throws IOException {
+        if(count == 0) {
+            return 0;
+        }
+        need(count);
+        final int value = (int)(bitBuffer&((1L<<count)-1));
+        drop(count);
+        return value;
+    }
+
+    /** Makes sure there are count bits in the bit buffer. Past the end of the file, zeros are made up. */
+    private void need(int count) throws IOException {
+        while(bitCount < count) {
+            if(inputPos == inputLimit && !fill()) {
+                if(padding == 8) {
+                    throw new EOFException("Unexpected end of gzip file");
+                }
+                inputLimit++;   //pretend there was a zero byte, decodeBlock checks if it was used
+                input[inputPos] = 0;
+                padding++;
+            }
+            bitBuffer |= (long)(input[inputPos++]&0xFF)<<bitCount;
+            bitCount += 8;
+        }
+    }
+
+    private void drop(int count) {
+        bitBuffer >>>= count;
+        bitCount -= count;
+    }
+
+    private int readByte() throws IOException {
+        final int b = byteOrEnd();
+        if(b < 0) {
+            throw new EOFException("Unexpected end of gzip file");
+        }
+        return b;
+    }
+
+    private long readInt() throws IOException {
+        return readByte()|readByte()<<8|readByte()<<16|(long)readByte()<<24;
+    }
+
+    /** Next byte on a byte boundary, or -1 at the end of the file. */
+    private int byteOrEnd() throws IOException {
+        if(bitCount >= 8) {
+            return bits(8);
+        }
+        if(inputPos == inputLimit && !fill()) {
+            return -1;
+        }
+        return input[inputPos++]&0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if(padding > 0) {
+            return false;
+        }
+        inputBase += inputLimit;
+        inputPos = 0;
+        inputLimit = 0;
+        final int count = in.read(input,0,input.length);
+        if(count <= 0) {
+            return false;
+        }
+        inputLimit = count;
+        return true;
+    }
+
+    /**
+     * Canonical huffman code. Codes up to FAST_BITS long are looked up in one go, longer ones are found by
+     * counting codes of each length, the way zlib's puff does it.
+     */
+    private static class Huffman {
+        final short[] count = new short[MAX_BITS+1];  //number of codes of each length
+        final short[] symbol;                           //symbols ordered by code
+        final int[] fast = new int[1<<FAST_BITS];       //symbol<<4 | length, by the next bits in the stream
+        private final short[] offsets = new short[MAX_BITS+2];
+
+        Huffman(int size) {
+            symbol = new short[size];
+        }
+
+        void build(byte[] lengths,int offset,int size) throws ZipException {
+            Arrays.fill(count,(short)0);
+            for(int i = 0; i < size; i++) {
+                count[lengths[offset+i]]++;
+            }
+            int left = 1;
+            for(int len = 1; len <= MAX_BITS; len++) {
+                left = (left<<1)-count[len];
+                if(left < 0) {
+                    throw new ZipException("Over subscribed huffman code");
+                }
+            }
+            offsets[1] = 0;
+            for(int len = 1; len <= MAX_BITS; len++) {
+                offsets[len+1] = (short)(offsets[len]+count[len]);
+            }
+            for(int i = 0; i < size; i++) {
+                if(lengths[offset+i] != 0) {
+                    symbol[offsets[lengths[offset+i]]++] = (short)i;
+                }
+            }
+
+            Arrays.fill(fast,0);
+            int code = 0;
+            int index = 0;
+            for(int len = 1; len <= FAST_BITS; len++) {
+                for(int i = 0; i < count[len]; i++,code++) {
+                    final int entry = symbol[index++]<<4|len;
+                    //the stream has the code's first bit first, so the table is indexed by the code reversed
+                    for(int bits = Integer.reverse(code)>>>(32-len); bits < fast.length; bits += 1<<len) {
+                        fast[bits] = entry;
+                    }
+                }
+                code <<= 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,503 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Line source for gzip compressed files, without decompressing the whole thing somewhere first. Like zlib's zran
+ * example, the file is decompressed once to find where the lines are, and every CHECKPOINT_SPACING bytes of output
+ * a checkpoint is kept: the bit position of the deflate block that starts there, and the 32K of output before it.
+ * Reading a line then only needs decompressing from the checkpoint before it. That's done with Inflater when the
+ * block starts on a byte boundary, and with GzipDecoder when it doesn't, since Inflater only takes whole bytes.
+ *
+ * Decompressed spans between checkpoints are cached, since lines are usually read near each other. The checkpoints
+ * are saved in the index folder, so opening the same file again skips the slow first pass. The line starts are
+ * found again from the checkpoints, which Inflater does quickly.
+ *
+ * A gzip file doesn't get appended to like a log does, so update() never finds anything new.
+ */
+public class GzipLineSource implements LineSource {
+    private static final long CHECKPOINT_SPACING = 4L<<20;
+    private static final int INPUT_CHUNK = 1<<16;
+    private static final int INITIAL_LINES = 1024;
+    private static final int INITIAL_CHECKPOINTS = 64;
+    private static final int CACHED_SPANS = Runtime.getRuntime().availableProcessors()+2;
+    private static final int INDEX_MAGIC = 0x475A4931;  //GZI1
+
+    private final File file;
+    private final Charset charset;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final File indexFile;
+
+    private long[] checkpointBits = new long[INITIAL_CHECKPOINTS];     //where the block starts in the file
+    private long[] checkpointOffsets = new long[INITIAL_CHECKPOINTS];  //offset in the decompressed data
+    private byte[][] checkpointWindows = new byte[INITIAL_CHECKPOINTS][];  //the 32K before it, deflated
+    private int checkpointCount;
+    private long uncompressedSize;
+
+    private long[] lineStarts = new long[INITIAL_LINES];
+    private int startCount;
+    private int maxLineLength;
+    private long nextScanOffset;    //offset of the next byte scan() gets
+    private int lineLength;         //of the line being scanned
+    private byte lastByte;
+
+    private final LruCache<byte[]> spans = new LruCache<>(CACHED_SPANS);  //locked, read by more then one thread
+
+    /** Indexes the file, or reuses the checkpoints from the last time it was opened. Uses the platform charset. */
+    public GzipLineSource(File f) throws IOException {
+        this(f,Charset.defaultCharset());
+    }
+
+    public GzipLineSource(File f,Charset charset) throws IOException {
+        this(f,charset,IndexCache.DEFAULT_FOLDER);
+    }
+
+    /**
+     * @param indexFolder Where the checkpoints are saved, or null to not save them.
+     */
+    public GzipLineSource(File f,Charset charset,File indexFolder) throws IOException {
+        this.file = f;
+        this.charset = charset;
+        this.raf = new RandomAccessFile(f,"r");
+        this.channel = raf.getChannel();
+        this.fileSize = channel.size();
+        this.indexFile = indexFolder == null ? null : new IndexCache(indexFolder).fileFor(f,".gzi");
+        lineStarts[startCount++] = 0;
+        try {
+            if(readIndex()) {
+                indexLines();
+            } else {
+                build();
+                writeIndex();
+            }
+        } catch(IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /** True if the file starts with the gzip magic number. */
+    public static boolean isGzip(File f) throws IOException {
+        try(InputStream in = new FileInputStream(f)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    @Override
+    public int lineCount() {
+        //the last start is an empty line if the file ends with a newline, so don't count it
+        if(lineStarts[startCount-1] < uncompressedSize) {
+            return startCount;
+        }
+        return startCount-1;
+    }
+
+    @Override
+    public String getLine(int lineNum) {
+        if(lineNum < 0 || lineNum >= lineCount()) {
+            throw new IndexOutOfBoundsException("Line "+lineNum+" of "+lineCount());
+        }
+        final long start = lineStarts[lineNum];
+        final long end = lineNum+1 < startCount ? lineStarts[lineNum+1]-1 : uncompressedSize;
+        try {
+            byte[] bytes = read(start,(int)(end-start));
+            int length = bytes.length;
+            if(length > 0 && bytes[length-1] == '\r') {
+                length--;
+            }
+            return new String(bytes,0,length,charset);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int maxLineLength() {
+        return maxLineLength;
+    }
+
+    /** The line starts and checkpoints, and the decompressed spans that are cached. */
+    @Override
+    public long heapBytes() {
+        long bytes = (long)lineStarts.length*Long.BYTES+(long)checkpointBits.length*Long.BYTES*2;
+        for(int i = 0; i < checkpointCount; i++) {
+            if(checkpointWindows[i] != null) {
+                bytes += checkpointWindows[i].length;
+            }
+        }
+        synchronized(spans) {
+            for(byte[] span : spans.values()) {
+                bytes += span.length;
+            }
+        }
+        return bytes;
+    }
+
+    /** The size of the gzip file, not what it decompresses to. */
+    @Override
+    public long sizeBytes() {
+        return fileSize;
+    }
+
+    @Override
+    public boolean update() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized(spans) {
+            spans.clear();
+        }
+        raf.close();
+    }
+
+    /** Decompresses the whole file with GzipDecoder, finding lines and making checkpoints as it goes. */
+    private void build() throws IOException {
+        try(InputStream in = new BufferedInputStream(new FileInputStream(file),INPUT_CHUNK)) {
+            GzipDecoder decoder = new GzipDecoder(in,(bytes,offset,length) -> scan(bytes,offset,length));
+            while(decoder.startMember()) {
+                //a new member doesn't refer back to the one before it, so no window is needed
+                addCheckpoint(decoder.bitPosition(),decoder.outputSize(),new byte[0]);
+                while(decoder.decodeBlock()) {
+                    final long offset = decoder.outputSize();
+                    if(offset-checkpointOffsets[checkpointCount-1] >= CHECKPOINT_SPACING) {
+                        addCheckpoint(decoder.bitPosition(),offset,deflate(decoder.window()));
+                    }
+                }
+                decoder.finishMember();
+            }
+            uncompressedSize = decoder.outputSize();
+        }
+    }
+
+    /** Finds the line starts by decompressing each span from its checkpoint. */
+    private void indexLines() throws IOException {
+        for(int i = 0; i < checkpointCount; i++) {
+            byte[] span = inflateSpan(i);
+            scan(span,0,span.length);
+        }
+    }
+
+    /** Records the lines in the next bytes of decompressed data. */
+    private void scan(byte[] bytes,int offset,int length) {
+        final long base = nextScanOffset-offset;
+        for(int i = offset; i < offset+length; i++) {
+            final byte b = bytes[i];
+            if(b == '\n') {
+                final int len = lastByte == '\r' ? lineLength-1 : lineLength;
+                if(len > maxLineLength) {
+                    maxLineLength = len;
+                }
+                addLineStart(base+i+1);
+                lineLength = 0;
+            } else {
+                lineLength++;
+            }
+            lastByte = b;
+        }
+        nextScanOffset += length;
+        if(lineLength > maxLineLength) {
+            maxLineLength = lineLength;     //last line without a newline
+        }
+    }
+
+    private void addLineStart(long offset) {
+        if(startCount == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts,lineStarts.length*2);
+        }
+        lineStarts[startCount++] = offset;
+    }
+
+    private void addCheckpoint(long bits,long offset,byte[] window) {
+        if(checkpointCount == checkpointBits.length) {
+            checkpointBits = Arrays.copyOf(checkpointBits,checkpointCount*2);
+            checkpointOffsets = Arrays.copyOf(checkpointOffsets,checkpointCount*2);
+            checkpointWindows = Arrays.copyOf(checkpointWindows,checkpointCount*2);
+        }
+        checkpointBits[checkpointCount] = bits;
+        checkpointOffsets[checkpointCount] = offset;
+        checkpointWindows[checkpointCount] = window;
+        checkpointCount++;
+    }
+
+    /** Copies length bytes of decompressed data starting at pos, which may cross from one span into the next. */
+    private byte[] read(long pos,int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int copied = 0;
+        while(copied < length) {
+            final int index = spanAt(pos);
+            final byte[] span = span(index);
+            final int offset = (int)(pos-checkpointOffsets[index]);
+            final int count = Math.min(length-copied,span.length-offset);
+            System.arraycopy(span,offset,bytes,copied,count);
+            copied += count;
+            pos += count;
+        }
+        return bytes;
+    }
+
+    /** The span holding the decompressed byte at pos. */
+    private int spanAt(long pos) {
+        int index = Arrays.binarySearch(checkpointOffsets,0,checkpointCount,pos);
+        if(index < 0) {
+            return -index-2;    //the checkpoint before it
+        }
+        while(index+1 < checkpointCount && checkpointOffsets[index+1] == pos) {
+            index++;            //skip empty spans, like an empty gzip member
+        }
+        return index;
+    }
+
+    private byte[] span(int index) throws IOException {
+        synchronized(spans) {
+            final byte[] span = spans.get(index);
+            if(span != null) {
+                return span;
+            }
+        }
+        final byte[] span = inflateSpan(index);     //not locked, so other threads can decompress other spans
+        synchronized(spans) {
+            spans.put(index,span);
+        }
+        return span;
+    }
+
+    /** Decompresses from a checkpoint up to the next one. */
+    private byte[] inflateSpan(int index) throws IOException {
+        final long end = index+1 < checkpointCount ? checkpointOffsets[index+1] : uncompressedSize;
+        final byte[] out = new byte[(int)(end-checkpointOffsets[index])];
+        if((checkpointBits[index]&7) != 0) {
+            decodeSpan(index,out);
+            return out;
+        }
+        long filePos = checkpointBits[index]>>>3;
+        final byte[] input = new byte[INPUT_CHUNK];
+        final Inflater inflater = new Inflater(true);
+        try {
+            if(checkpointWindows[index].length > 0) {
+                inflater.setDictionary(inflate(checkpointWindows[index]));
+            }
+            int done = 0;
+            while(done < out.length) {
+                if(inflater.needsInput()) {
+                    final int count = readFully(filePos,input);
+                    if(count <= 0) {
+                        throw new EOFException("Unexpected end of gzip file");
+                    }
+                    filePos += count;
+                    inflater.setInput(input,0,count);
+                }
+                final int count = inflater.inflate(out,done,out.length-done);
+                if(count == 0 && inflater.finished()) {
+                    throw new ZipException("Corrupt gzip file, span ended early");
+                }
+                done += count;
+            }
+        } catch(DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return out;
+    }
+
+    /**
+     * Decompresses a span whose checkpoint isn't on a byte boundary. Shifting the input into line for Inflater
+     * would work for compressed blocks, but a stored block is padded to a byte boundary of the file, which a shift
+     * moves, and that's what every flush point of pigz or zlib's Z_SYNC_FLUSH has.
+     */
+    private void decodeSpan(int index,byte[] out) throws IOException {
+        final int[] done = new int[1];
+        final GzipDecoder decoder = new GzipDecoder(new FileInput(checkpointBits[index]>>>3),(bytes,offset,length) -> {
+            final int count = Math.min(length,out.length-done[0]);
+            System.arraycopy(bytes,offset,out,done[0],count);
+            done[0] += count;
+        });
+        decoder.resume((int)(checkpointBits[index]&7),inflate(checkpointWindows[index]));
+        while(done[0] < out.length) {
+            final boolean more = decoder.decodeBlock();
+            decoder.flush();
+            if(!more && done[0] < out.length) {
+                throw new ZipException("Corrupt gzip file, span ended early");
+            }
+        }
+    }
+
+    /** Reads from the file at pos until bytes is full or the file ends. */
+    private int readFully(long pos,byte[] bytes) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while(buffer.hasRemaining()) {
+            final int count = channel.read(buffer,pos+buffer.position());
+            if(count < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private static byte[] deflate(byte[] window) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED,true);
+        try {
+            deflater.setInput(window);
+            deflater.finish();
+            byte[] out = new byte[window.length+64];    //in case it doesn't compress
+            int length = 0;
+            while(!deflater.finished()) {
+                if(length == out.length) {
+                    out = Arrays.copyOf(out,out.length*2);
+                }
+                length += deflater.deflate(out,length,out.length-length);
+            }
+            return Arrays.copyOf(out,length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] window) throws ZipException {
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(window);
+            byte[] out = new byte[GzipDecoder.WINDOW_SIZE];
+            int length = 0;
+            while(!inflater.finished() && length < out.length) {
+                final int count = inflater.inflate(out,length,out.length-length);
+                if(count == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += count;
+            }
+            return Arrays.copyOf(out,length);
+        } catch(DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Loads the checkpoints saved the last time this file was opened.
+     *
+     * @return false if there aren't any, or the file changed since.
+     */
+    private boolean readIndex() {
+        if(indexFile == null || !indexFile.isFile()) {
+            return false;
+        }
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if(in.readInt() != INDEX_MAGIC
+                    || !in.readUTF().equals(file.getAbsolutePath())
+                    || in.readLong() != fileSize
+                    || in.readLong() != file.lastModified()) {
+                return false;
+            }
+            uncompressedSize = in.readLong();
+            final int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                final long bits = in.readLong();
+                final long offset = in.readLong();
+                final byte[] window = new byte[in.readInt()];
+                in.readFully(window);
+                addCheckpoint(bits,offset,window);
+            }
+            return true;
+        } catch(IOException e) {
+            checkpointCount = 0;    //damaged, build it again
+            return false;
+        }
+    }
+
+    /** Saves the checkpoints for next time. It's only a cache, so if it can't be saved that's fine. */
+    private void writeIndex() {
+        final File folder = indexFile == null ? null : indexFile.getParentFile();
+        if(folder == null || !folder.isDirectory() && !folder.mkdirs()) {
+            return;
+        }
+        final File temp = new File(indexFile.getPath()+".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeUTF(file.getAbsolutePath());
+            out.writeLong(fileSize);
+            out.writeLong(file.lastModified());
+            out.writeLong(uncompressedSize);
+            out.writeInt(checkpointCount);
+            for(int i = 0; i < checkpointCount; i++) {
+                out.writeLong(checkpointBits[i]);
+                out.writeLong(checkpointOffsets[i]);
+                out.writeInt(checkpointWindows[i].length);
+                out.write(checkpointWindows[i]);
+            }
+        } catch(IOException e) {
+            temp.delete();
+            return;
+        }
+        if(!temp.renameTo(indexFile)) {
+            indexFile.delete();
+            if(!temp.renameTo(indexFile)) {
+                temp.delete();
+            }
+        }
+    }
+
+    /** Reads the file from a position on, without moving the channel's position, so spans can be read at once. */
+    private class FileInput extends InputStream {
+        private long pos;
+
+        FileInput(long pos) {
+            this.pos = pos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            return read(one,0,1) <= 0 ? -1 : one[0]&0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes,int offset,int length) throws IOException {
+            final int count = channel.read(ByteBuffer.wrap(bytes,offset,length),pos);
+            if(count > 0) {
+                pos += count;
+            }
+            return count;
+        }
+    }
+}
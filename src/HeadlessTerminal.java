@@ -0,0 +1,210 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Terminal that doesn't need a terminal. What is printed is kept in memory so it can be checked, and keys come from
+ * a script instead of the keyboard. getch() never waits, when the script runs out it returns ERR, same as a timeout,
+ * or the key set with setKeyWhenDone(). With the timeout set to block it always returns ERR then, because no key is
+ * ever coming, so a prompt waiting for Enter gives up instead of reading the quit key forever.
+ *
+ * Every call that would have gone to the real terminal is counted, so the cost of drawing a frame can be measured.
+ */
+public class HeadlessTerminal implements Terminal {
+    private final ArrayDeque<Integer> keys = new ArrayDeque<>();
+    private int keyWhenDone = ERR;
+    private boolean blocking;
+    private int width;
+    private int height;
+    private boolean sizeChanged = true;
+    private char[] chars;
+    private int[] pairs;
+    private int cursorX;
+    private int cursorY;
+    private int currentPair;
+    private long calls;
+
+    public HeadlessTerminal(int width,int height) {
+        setSize(width,height);
+    }
+
+    /** Change the size, like the user resizing their window. The screen is blanked. */
+    public void setSize(int width,int height) {
+        this.width = width;
+        this.height = height;
+        chars = new char[width*height];
+        pairs = new int[width*height];
+        Arrays.fill(chars,' ');
+        sizeChanged = true;
+    }
+
+    /** Adds the keys to the end of the script. */
+    public void pushKeys(String keys) {
+        for(int i = 0; i < keys.length(); i++) {
+            this.keys.add((int)keys.charAt(i));
+        }
+    }
+
+    /** Adds key codes to the end of the script, for keys like Esc that aren't easy to type in a String. */
+    public void pushKeys(int... keys) {
+        for(int key : keys) {
+            this.keys.add(key);
+        }
+    }
+
+    /** The key getch() keeps returning once the script runs out, like 'q' to make sure the viewer quits. */
+    public void setKeyWhenDone(int key) {
+        keyWhenDone = key;
+    }
+
+    /** The text on line y of the screen. */
+    public String getLine(int y) {
+        return new String(chars,y*width,width);
+    }
+
+    /** The whole screen, one line per row. */
+    public String getScreen() {
+        StringBuilder sb = new StringBuilder();
+        for(int y = 0; y < height; y++) {
+            sb.append(getLine(y)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /** The color pair the character at x,y was printed with, 0 if none. */
+    public int getPair(int x,int y) {
+        return pairs[y*width+x];
+    }
+
+    /** Number of calls made that would have gone to the real terminal. */
+    public long getCallCount() {
+        return calls;
+    }
+
+    public void resetCallCount() {
+        calls = 0;
+    }
+
+    @Override
+    public int initscr() {
+        return 0;
+    }
+
+    @Override
+    public int endwin() {
+        return 0;
+    }
+
+    @Override
+    public int initPair(int pair,int foreground,int background) {
+        return 0;
+    }
+
+    @Override
+    public int timeout(int delay) {
+        blocking = delay < 0;
+        return 0;
+    }
+
+    @Override
+    public int getch() {
+        calls++;
+        final Integer key = keys.poll();
+        if(key == null) {
+            return blocking ? ERR : keyWhenDone;
+        }
+        return key;
+    }
+
+    @Override
+    public boolean updateSize() {
+        final boolean changed = sizeChanged;
+        sizeChanged = false;
+        return changed;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int move(int x,int y) {
+        calls++;
+        cursorX = x;
+        cursorY = y;
+        return 0;
+    }
+
+    @Override
+    public int attron(int pair) {
+        calls++;
+        currentPair = pair;
+        return 0;
+    }
+
+    @Override
+    public int attroff(int pair) {
+        calls++;
+        currentPair = 0;
+        return 0;
+    }
+
+    /** Prints at the cursor, wrapping onto the next line at the right edge like curses. */
+    @Override
+    public int printw(String text) {
+        calls++;
+        for(int i = 0; i < text.length(); i++) {
+            if(cursorX >= width) {
+                cursorX = 0;
+                cursorY++;
+            }
+            if(cursorY >= height) {
+                return ERR;
+            }
+            final int offset = cursorY*width+cursorX;
+            chars[offset] = text.charAt(i);
+            pairs[offset] = currentPair;
+            cursorX++;
+        }
+        return 0;
+    }
+
+    @Override
+    public int clear() {
+        calls++;
+        Arrays.fill(chars,' ');
+        Arrays.fill(pairs,0);
+        cursorX = 0;
+        cursorY = 0;
+        return 0;
+    }
+
+    @Override
+    public int refresh() {
+        calls++;
+        return 0;
+    }
+}
@@ -0,0 +1,337 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * Saves what was learned about a file, so opening it again is quick. Kept in a folder, one file per log:
+ *
+ *   name-hash.idx      where each line starts, and the longest line. Line lengths are stored as varints, so most
+ *                      lines take a byte or two.
+ *   name-hash.marks    the bookmarked lines.
+ *
+ * Both start with the path, size, modified time and a checksum of the first and last CHECK_SIZE bytes of what
+ * they cover. If the file is the same, the saved index is used as is. If the file grew and the checksums still
+ * match, it was appended to, and only the new part is scanned. Anything else, the saved data is ignored.
+ *
+ * It's only a cache, so failing to save is not an error.
+ */
+public class IndexCache {
+    /** Where Garfield keeps things between runs. */
+    public static final File DEFAULT_FOLDER = new File(System.getProperty("user.home"),".garfield");
+
+    private static final int INDEX_MAGIC = 0x47495831;  //GIX1
+    private static final int MARKS_MAGIC = 0x474D4B31;  //GMK1
+    private static final int CHECK_SIZE = 65536;
+    private static final int BUFFER_SIZE = 65536;
+
+    private final File folder;
+
+    public IndexCache(File folder) {
+        this.folder = folder;
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    /**
+     * The cache file for f with the given extension. The name of the log is kept so the folder makes sense to look
+     * at, the hash of the path keeps logs with the same name apart.
+     */
+    public File fileFor(File f,String extension) {
+        return new File(folder,f.getName()+"-"+Integer.toHexString(f.getAbsolutePath().hashCode())+extension);
+    }
+
+    /**
+     * Opens the file using the saved index if there is one that still matches, otherwise scans the whole file.
+     * If anything had to be scanned, the index is saved again.
+     */
+    public MappedLineSource open(File f,Charset charset) throws IOException {
+        MappedLineSource source = readIndex(f,charset);
+        if(source == null) {
+            source = new MappedLineSource(f,charset);
+        }
+        save(f,source);
+        return source;
+    }
+
+    /** Saves the index of source, unless what is saved already covers the same bytes. */
+    public void save(File f,MappedLineSource source) {
+        final Header header = header(f,source.sizeBytes());
+        if(header == null) {
+            return;
+        }
+        final Header saved = readHeader(fileFor(f,".idx"),INDEX_MAGIC);
+        if(header.equals(saved)) {
+            return;
+        }
+        write(fileFor(f,".idx"),out -> {
+            header.write(out,INDEX_MAGIC);
+            out.writeInt(source.maxLineLength());
+            out.writeInt(source.lineStartCount());
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int length = 0;
+            for(int i = 1; i < source.lineStartCount(); i++) {
+                if(length > buffer.length-10) {
+                    out.write(buffer,0,length);
+                    length = 0;
+                }
+                long delta = source.lineStart(i)-source.lineStart(i-1);
+                while(delta >= 0x80) {
+                    buffer[length++] = (byte)(delta|0x80);
+                    delta >>>= 7;
+                }
+                buffer[length++] = (byte)delta;
+            }
+            out.write(buffer,0,length);
+        });
+    }
+
+    /**
+     * Loads the bookmarks saved for the file.
+     *
+     * @return the bookmarked lines, empty if there aren't any or the file changed.
+     */
+    public IntList readMarks(File f) {
+        IntList marks = new IntList();
+        final File marksFile = fileFor(f,".marks");
+        final Header saved = readHeader(marksFile,MARKS_MAGIC);
+        if(saved == null || !saved.matches(f)) {
+            return marks;
+        }
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(marksFile)))) {
+            Header.read(in,MARKS_MAGIC);
+            final int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                marks.add(in.readInt());
+            }
+        } catch(IOException e) {
+            marks.clear();
+        }
+        return marks;
+    }
+
+    /** Saves the bookmarked lines, or removes the saved ones if there aren't any. */
+    public void saveMarks(File f,long sizeBytes,IntList marks) {
+        final File marksFile = fileFor(f,".marks");
+        if(marks.isEmpty()) {
+            if(marksFile.exists() && !marksFile.delete()) {
+                marksFile.deleteOnExit();
+            }
+            return;
+        }
+        final Header header = header(f,sizeBytes);
+        if(header == null) {
+            return;
+        }
+        write(marksFile,out -> {
+            header.write(out,MARKS_MAGIC);
+            out.writeInt(marks.size());
+            for(int i = 0; i < marks.size(); i++) {
+                out.writeInt(marks.get(i));
+            }
+        });
+    }
+
+    /** Reads the saved index, and scans anything appended since. Null if there isn't one that matches. */
+    private MappedLineSource readIndex(File f,Charset charset) {
+        final File indexFile = fileFor(f,".idx");
+        final Header saved = readHeader(indexFile,INDEX_MAGIC);
+        if(saved == null || !saved.matches(f)) {
+            return null;
+        }
+        try(InputStream in = new BufferedInputStream(new FileInputStream(indexFile),BUFFER_SIZE)) {
+            final DataInputStream data = new DataInputStream(in);
+            Header.read(data,INDEX_MAGIC);
+            final int maxLineLength = data.readInt();
+            final int startCount = data.readInt();
+            if(startCount < 1) {
+                return null;
+            }
+            final long[] lineStarts = new long[startCount+startCount/4+1];  //room to grow
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int pos = 0;
+            int limit = 0;
+            long start = 0;
+            for(int i = 1; i < startCount; i++) {
+                long delta = 0;
+                int shift = 0;
+                int b;
+                do {
+                    if(pos == limit) {
+                        limit = in.read(buffer);
+                        pos = 0;
+                        if(limit <= 0) {
+                            throw new EOFException();
+                        }
+                    }
+                    b = buffer[pos++];
+                    delta |= (long)(b&0x7F)<<shift;
+                    shift += 7;
+                } while(b < 0);     //high bit set, more to come
+                start += delta;
+                lineStarts[i] = start;
+            }
+            return new MappedLineSource(f,charset,lineStarts,startCount,saved.size,maxLineLength);
+        } catch(IOException e) {
+            return null;    //damaged or the file changed underneath us, scan it
+        }
+    }
+
+    /** Describes the first size bytes of the file, null if it can't be read. */
+    private static Header header(File f,long size) {
+        try {
+            return new Header(f.getAbsolutePath(),size,f.lastModified(),checksums(f,size));
+        } catch(IOException e) {
+            return null;
+        }
+    }
+
+    private static Header readHeader(File cacheFile,int magic) {
+        if(!cacheFile.isFile()) {
+            return null;
+        }
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            return Header.read(in,magic);
+        } catch(IOException e) {
+            return null;
+        }
+    }
+
+    /** CRC of the first CHECK_SIZE bytes in the top half, and the last CHECK_SIZE bytes before size in the bottom. */
+    private static long checksums(File f,long size) throws IOException {
+        try(RandomAccessFile file = new RandomAccessFile(f,"r")) {
+            if(file.length() < size) {
+                throw new EOFException();
+            }
+            final byte[] bytes = new byte[(int)Math.min(size,CHECK_SIZE)];
+            final CRC32 crc = new CRC32();
+            file.readFully(bytes);
+            crc.update(bytes);
+            final long head = crc.getValue();
+            crc.reset();
+            file.seek(size-bytes.length);
+            file.readFully(bytes);
+            crc.update(bytes);
+            return head<<32|crc.getValue();
+        }
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Writes to a temp file, then renames it, so a half written cache file is never read. */
+    private void write(File cacheFile,Writer writer) {
+        if(!folder.isDirectory() && !folder.mkdirs()) {
+            return;
+        }
+        final File temp = new File(cacheFile.getPath()+".tmp");
+        try(OutputStream file = new FileOutputStream(temp)) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file,BUFFER_SIZE));
+            writer.write(out);
+            out.flush();
+        } catch(IOException e) {
+            if(!temp.delete()) {
+                temp.deleteOnExit();
+            }
+            return;
+        }
+        if(!temp.renameTo(cacheFile)) {
+            //windows won't rename over an existing file
+            if(!cacheFile.delete() || !temp.renameTo(cacheFile)) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+
+    /** What a cache file was made from. */
+    private static class Header {
+        final String path;
+        final long size;
+        final long modified;
+        final long checksums;
+
+        Header(String path,long size,long modified,long checksums) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.checksums = checksums;
+        }
+
+        static Header read(DataInputStream in,int magic) throws IOException {
+            if(in.readInt() != magic) {
+                throw new IOException("Not a cache file");
+            }
+            return new Header(in.readUTF(),in.readLong(),in.readLong(),in.readLong());
+        }
+
+        void write(DataOutputStream out,int magic) throws IOException {
+            out.writeInt(magic);
+            out.writeUTF(path);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeLong(checksums);
+        }
+
+        /** True if f is the file this was made from, or that file with more appended to it. */
+        boolean matches(File f) {
+            if(!path.equals(f.getAbsolutePath())) {
+                return false;
+            }
+            final long length = f.length();
+            if(length < size || length == size && f.lastModified() != modified) {
+                return false;
+            }
+            try {
+                return checksums(f,size) == checksums;
+            } catch(IOException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Header)) {
+                return false;
+            }
+            final Header other = (Header)o;
+            return path.equals(other.path) && size == other.size && modified == other.modified
+                    && checksums == other.checksums;
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode()^Long.hashCode(size);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Reads what is appended to the file on a background thread while following, so the viewer doesn't have to stop
+ * and index a big burst of lines before it can look at the keyboard again.
+ *
+ * The file is read a step of at most STEP_BYTES at a time. The lines can't be read while they are being updated, so
+ * each step holds a lock the viewer only lets go of while it waits for a key. After a step it is put in a queue that
+ * holds BUFFER_STEPS. The viewer takes everything in it once per frame, and if it doesn't keep up the queue fills
+ * and reading stops until it does. However fast the file grows, the viewer only has that many steps to catch up on
+ * before it gets back to the keyboard.
+ *
+ * Growth is noticed from the watcher, or by checking the size now and then. A check that finds nothing new can mean
+ * the file was rotated or truncated, which is left to the viewer to look into, see takeStale().
+ */
+public class IngestJob implements Runnable {
+    /** Most bytes read in one step. */
+    static final long STEP_BYTES = 4L<<20;
+    /** Steps that can be waiting for the viewer before reading stops. */
+    static final int BUFFER_STEPS = 4;
+    /** How often to look at the watcher flag, or at the queue when it's full, or try for the lock again. */
+    private static final long WAIT_MS = 10;
+    /** How often to check the size when there is no watcher. */
+    private static final long POLL_INTERVAL = 250;
+    /** Check the size now and then even with a watcher, in case an event was missed. */
+    private static final long WATCH_POLL_INTERVAL = 2000;
+
+    private final LineSource lines;
+    private final Lock lock;
+    private final FileWatcher watcher;
+    private final File[] files;
+    private final BlockingQueue<Step> steps = new ArrayBlockingQueue<>(BUFFER_STEPS);
+    private Thread thread;
+    private long lastPolled;
+    private volatile long diskBytes;
+    private final AtomicBoolean stale = new AtomicBoolean();
+    private volatile boolean stopped;
+    private volatile IOException error;
+
+    /**
+     * @param lines The lines to add to. Only updated while holding lock.
+     * @param lock Held by whoever reads the lines.
+     * @param watcher Says when the files changed. May be null, or stop watching, then the size is checked instead.
+     * @param files The files on disk, to tell how far behind reading is.
+     */
+    public IngestJob(LineSource lines,Lock lock,FileWatcher watcher,File... files) {
+        this.lines = lines;
+        this.lock = lock;
+        this.watcher = watcher;
+        this.files = files;
+        this.diskBytes = diskSize();
+    }
+
+    /** Start reading on a new thread. */
+    public IngestJob start() {
+        thread = new Thread(this,"ingest");
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    @Override
+    public void run() {
+        boolean more = true;        //the file may have grown before we started
+        boolean checked = false;    //a change was seen, or it's time to look at the size
+        lastPolled = System.currentTimeMillis();
+        try {
+            while(!stopped) {
+                if(!more && !checked) {
+                    checked = changed();
+                }
+                if(!(more || checked) || steps.remainingCapacity() == 0) {
+                    if(more) {
+                        diskBytes = diskSize();     //the file keeps growing while the viewer catches up
+                    }
+                    Thread.sleep(WAIT_MS);
+                    continue;
+                }
+                if(!lock.tryLock(WAIT_MS,TimeUnit.MILLISECONDS)) {
+                    continue;   //look at stopped again
+                }
+                try {
+                    if(stopped) {
+                        break;
+                    }
+                    more = step();
+                } finally {
+                    lock.unlock();
+                }
+                diskBytes = diskSize();
+                if(checked && !more) {
+                    stale.set(true);
+                }
+                checked = false;
+            }
+        } catch(IOException e) {
+            error = e;
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns what was read since the last call, all the steps added up, or null if nothing was. Call it while
+     * holding the lock, then the lines hold exactly what was taken.
+     *
+     * @throws IOException if reading failed, which stops the job.
+     */
+    public Step take() throws IOException {
+        if(error != null) {
+            throw error;
+        }
+        Step total = null;
+        Step step;
+        while((step = steps.poll()) != null) {
+            total = total == null ? step : new Step(total.bytes+step.bytes,total.nanos+step.nanos);
+        }
+        return total;
+    }
+
+    /**
+     * Returns true if the file changed since the last call and nothing new could be read from it, which happens when
+     * it was replaced or got smaller.
+     */
+    public boolean takeStale() {
+        return stale.getAndSet(false);
+    }
+
+    /** Size of the files on disk, as of the last step or check. */
+    public long getDiskBytes() {
+        return diskBytes;
+    }
+
+    /** Stop reading, and wait for the thread to finish up. Fine to call while holding the lock. */
+    public void stop() {
+        stopped = true;
+        if(thread != null) {
+            try {
+                thread.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Reads up to STEP_BYTES more, and queues what was read. Returns true if there was anything. */
+    private boolean step() throws IOException {
+        final long start = System.nanoTime();
+        final long oldSize = lines.sizeBytes();
+        if(!lines.update(STEP_BYTES)) {
+            return false;
+        }
+        steps.add(new Step(lines.sizeBytes()-oldSize,System.nanoTime()-start));
+        return true;
+    }
+
+    /** True if the watcher saw a change, or it's time to check the size. */
+    private boolean changed() {
+        final boolean watching = watcher != null && watcher.isWatching();
+        if(watching && watcher.takeChanged()) {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        if(now-lastPolled < (watching ? WATCH_POLL_INTERVAL : POLL_INTERVAL)) {
+            return false;
+        }
+        lastPolled = now;
+        return true;
+    }
+
+    private long diskSize() {
+        long size = 0;
+        for(File f : files) {
+            size += f.length();
+        }
+        return size;
+    }
+
+    /** What one or more steps read. */
+    public static class Step {
+        /** Bytes read. */
+        public final long bytes;
+        /** Time spent reading them. */
+        public final long nanos;
+
+        Step(long bytes,long nanos) {
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+    }
+}
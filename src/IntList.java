@@ -0,0 +1,104 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.util.Arrays;
+
+/**
+ * A growable list of ints that doesn't box anything. Used for lists of line numbers, which can get into the
+ * millions on a big file.
+ */
+public class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(1,capacity)];
+    }
+
+    /** Number of values the list can hold before it has to grow. */
+    public int capacity() {
+        return values.length;
+    }
+
+    /** Adds the value to the end of the list. */
+    public void add(int value) {
+        if(size == values.length) {
+            values = Arrays.copyOf(values,values.length*2);
+        }
+        values[size++] = value;
+    }
+
+    /** Adds all the values of the other list to the end of this one. */
+    public void addAll(IntList other) {
+        if(size+other.size > values.length) {
+            values = Arrays.copyOf(values,Math.max(values.length*2,size+other.size));
+        }
+        System.arraycopy(other.values,0,values,size,other.size);
+        size += other.size;
+    }
+
+    public int get(int index) {
+        if(index >= size) {
+            throw new IndexOutOfBoundsException("Index "+index+" of "+size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** The last value in the list. */
+    public int last() {
+        return get(size-1);
+    }
+
+    /**
+     * Searches a list that is in ascending order for the value, same as Arrays.binarySearch().
+     *
+     * @return the index of the value if it is in the list, otherwise (-(insertion point) - 1).
+     */
+    public int binarySearch(int value) {
+        return Arrays.binarySearch(values,0,size,value);
+    }
+
+    /** Drops everything from newSize on. */
+    public void truncate(int newSize) {
+        if(newSize < size) {
+            size = Math.max(0,newSize);
+        }
+    }
+
+    /** Remove all values, but keep the memory around for reuse. */
+    public void clear() {
+        size = 0;
+    }
+
+    /** A copy of the values, sized to fit. */
+    public int[] toArray() {
+        return Arrays.copyOf(values,size);
+    }
+}
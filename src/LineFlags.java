@@ -1,22 +1,30 @@
-import java.util.HashMap;
-import java.util.Set;
+import java.util.BitSet;
 
 /**
  * Keeps a list of bit flags. You pass in a line number, and bit mask, and LineFlag will
- * take care of setting/resetting the bits and adding to the hashmap.
- * Each flag is an integer that can hold 0xFFFFFFFF flags.
+ * take care of setting/resetting the bits.
+ * Each flag bit has its own BitSet indexed by line number, so nothing gets boxed, and finding the next line
+ * with a flag set is a word at a time scan instead of checking every line.
  * Get will return 0 if the flag doesn't exist, and a new flag is NOT created.
  */
 public class LineFlags {
     private final static int BITMASK=0xFFFF;
-    private HashMap<Integer,Integer> lineFlags = new HashMap<>();
+    private final static int BIT_COUNT=16;
+    private final BitSet[] flagBits = new BitSet[BIT_COUNT];   //created the first time a bit is used
+    private final BitSet anyFlag = new BitSet();                //lines with at least one bit set
+    private int size;
 
     /** Return the current flag value for the given line number. */
     public int get(int lineNum) {
-        Integer flag = lineFlags.get(lineNum);
-        if(flag == null) {
+        if(!anyFlag.get(lineNum)) {
             return 0;
         }
+        int flag = 0;
+        for(int bit=0; bit<BIT_COUNT; bit++) {
+            if(flagBits[bit] != null && flagBits[bit].get(lineNum)) {
+                flag |= 1<<bit;
+            }
+        }
         return flag;
     }
 
@@ -31,23 +39,51 @@ public class LineFlags {
      */
     public void set(int lineNum,int mask) {
         mask = mask&BITMASK; //trim anything we don't deal with
-        int lineFlag = get(lineNum);
-        lineFlag |= mask;
-        lineFlags.put(lineNum,lineFlag);
+        if(mask == 0) {
+            return;
+        }
+        for(int bit=0; bit<BIT_COUNT; bit++) {
+            if((mask&(1<<bit)) != 0) {
+                if(flagBits[bit] == null) {
+                    flagBits[bit] = new BitSet();
+                }
+                flagBits[bit].set(lineNum);
+            }
+        }
+        if(!anyFlag.get(lineNum)) {
+            anyFlag.set(lineNum);
+            size++;
+        }
     }
 
     public void reset(int lineNum,int mask) {
-        if(lineFlags.containsKey(lineNum)) {
-            int lineFlag = get(lineNum);
-            lineFlag &= BITMASK-mask;
-            lineFlags.put(lineNum,lineFlag);
+        if(anyFlag.get(lineNum)) {
+            for(int bit=0; bit<BIT_COUNT; bit++) {
+                if((mask&(1<<bit)) != 0 && flagBits[bit] != null) {
+                    flagBits[bit].clear(lineNum);
+                }
+            }
+            if(get(lineNum) == 0) {
+                anyFlag.clear(lineNum);
+                size--;
+            }
         }
     }
 
+    /** Reset the bits in mask on every line. Lines that end up with no bits set are removed. */
     public void reset(int mask) {
-        for(Integer key : lineFlags.keySet()) {
-            reset(key,mask);
+        for(int bit=0; bit<BIT_COUNT; bit++) {
+            if((mask&(1<<bit)) != 0 && flagBits[bit] != null) {
+                flagBits[bit].clear();
+            }
+        }
+        anyFlag.clear();
+        for(BitSet bits : flagBits) {
+            if(bits != null) {
+                anyFlag.or(bits);
+            }
         }
+        size = anyFlag.cardinality();
     }
 
     /**
@@ -62,17 +98,80 @@ public class LineFlags {
         return (lineFlag&mask) == mask;
     }
 
-    /** The number of flags. */
+    /**
+     * Finds the first line at or after fromLine that has all the bits in mask set.
+     *
+     * @param fromLine Line to start looking at.
+     * @param mask bits that need to be set, 0 means any flag at all.
+     * @return the line number, or -1 if there isn't one.
+     */
+    public int nextSetLine(int fromLine,int mask) {
+        final BitSet bits = bitsFor(mask);
+        if(bits == null) {
+            return -1;
+        }
+        for(int line = bits.nextSetBit(Math.max(0,fromLine)); line >= 0; line = bits.nextSetBit(line+1)) {
+            if(isSet(line,mask)) {
+                return line;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the last line at or before fromLine that has all the bits in mask set.
+     *
+     * @param fromLine Line to start looking at.
+     * @param mask bits that need to be set, 0 means any flag at all.
+     * @return the line number, or -1 if there isn't one.
+     */
+    public int prevSetLine(int fromLine,int mask) {
+        final BitSet bits = bitsFor(mask);
+        if(bits == null || fromLine < 0) {
+            return -1;
+        }
+        for(int line = bits.previousSetBit(fromLine); line >= 0; line = bits.previousSetBit(line-1)) {
+            if(isSet(line,mask)) {
+                return line;
+            }
+        }
+        return -1;
+    }
+
+    /** The number of lines with a flag set. */
     public int size() {
-        return lineFlags.size();
+        return size;
+    }
+
+    /** Roughly how much heap the flags take, which is a bit per line for each flag used. */
+    public long heapBytes() {
+        long bytes = anyFlag.size()/8;
+        for(BitSet bits : flagBits) {
+            if(bits != null) {
+                bytes += bits.size()/8;
+            }
+        }
+        return bytes;
     }
 
     /** Remove all flags. */
     public void clear() {
-        lineFlags.clear();
+        for(int bit=0; bit<BIT_COUNT; bit++) {
+            flagBits[bit] = null;
+        }
+        anyFlag.clear();
+        size = 0;
     }
 
-    public Set<Integer> keySet() {
-        return lineFlags.keySet();
+    /**
+     * The BitSet to walk when looking for lines with mask set. Uses the lowest bit of the mask, then the other bits
+     * get checked on each line found.
+     */
+    private BitSet bitsFor(int mask) {
+        mask = mask&BITMASK;
+        if(mask == 0) {
+            return anyFlag;
+        }
+        return flagBits[Integer.numberOfTrailingZeros(mask)];
     }
 }
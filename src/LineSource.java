@@ -0,0 +1,96 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where the viewer gets its lines from. Lines are numbered from 0, and are only turned into a String when
+ * somebody asks for one, so an implementation is free to keep the actual text on disk.
+ */
+public interface LineSource extends Closeable {
+    /** Number of lines available. */
+    int lineCount();
+
+    /**
+     * Returns the text of the line, without the line terminator. May be called from several threads at once, as
+     * long as nobody is calling update() at the same time.
+     *
+     * @param lineNum Line of the file, starting at 0.
+     * @throws java.io.UncheckedIOException if the line couldn't be read.
+     */
+    String getLine(int lineNum);
+
+    /** Length of the longest line seen so far. Used to limit horizontal scrolling. */
+    int maxLineLength();
+
+    /** Number of bytes of the file that have been indexed. */
+    long sizeBytes();
+
+    /**
+     * Roughly how much heap the source uses to find its lines, like the index of where each line starts. The text
+     * itself isn't counted when it stays on disk.
+     */
+    default long heapBytes() {
+        return 0;
+    }
+
+    /**
+     * Picks up anything appended to the file since it was opened or last updated. Only the new bytes are looked
+     * at. If the last line didn't have a newline yet, it is extended by the new bytes rather then becoming a new line.
+     *
+     * @return true if the file grew, false if nothing changed.
+     */
+    boolean update() throws IOException;
+
+    /**
+     * Like update(), but stops after about maxBytes new bytes, so a file that grew a lot can be read a bit at a
+     * time. The last line may be cut short, it is extended by the next update. A source that reads everything at
+     * once can ignore the limit.
+     *
+     * @return true if the file grew, false if nothing changed.
+     */
+    default boolean update(long maxBytes) throws IOException {
+        return update();
+    }
+
+    /**
+     * True if the file was truncated since it was indexed: it's smaller then what was indexed, or it no longer starts
+     * with the same bytes, because it was emptied and written again. The lines can't be trusted after that, and the
+     * file has to be opened again.
+     */
+    default boolean isTruncated() throws IOException {
+        return false;
+    }
+
+    /**
+     * Finds the lines from fromLine up to but not including toLine that have the literal in them. A source that
+     * can search its bytes without making a String of every line should do so.
+     *
+     * @return the matching line numbers, in ascending order.
+     */
+    default IntList find(LiteralMatcher literal,int fromLine,int toLine) {
+        IntList hits = new IntList();
+        for(int i = fromLine; i < toLine; i++) {
+            if(literal.matches(getLine(i))) {
+                hits.add(i);
+            }
+        }
+        return hits;
+    }
+}
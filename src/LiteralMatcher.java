@@ -0,0 +1,181 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finds a fixed piece of text using Boyer-Moore-Horspool. The last character of the query is compared first, and
+ * if it doesn't match, the skip table says how far along the text can move, which is usually the whole length of
+ * the query. Nothing is allocated while searching, case is folded one character at a time as it is compared.
+ *
+ * The text can be a String, or the raw bytes of a file. Searching bytes skips decoding the line at all, and works
+ * when the query has the same bytes in the file's charset, and it can't be fooled by a multi-byte character. That
+ * is any query in UTF-8, or an ASCII query in ISO-8859-1 or US-ASCII. When ignoring case, the query has to be
+ * ASCII, since only ASCII letters are folded in bytes.
+ *
+ * Ignoring case means comparing Character.toLowerCase() of each character, except that a character outside ASCII
+ * never matches one inside it. Otherwise the Kelvin sign would match 'k', and a search in bytes would disagree with
+ * the same search in Strings.
+ */
+public class LiteralMatcher {
+    private static final int TABLE_SIZE = 256;
+    private static final byte[] LOWER_BYTES = new byte[TABLE_SIZE];
+    private static final byte[] SAME_BYTES = new byte[TABLE_SIZE];
+
+    static {
+        for(int i = 0; i < TABLE_SIZE; i++) {
+            SAME_BYTES[i] = (byte)i;
+            LOWER_BYTES[i] = (byte)(i >= 'A' && i <= 'Z' ? i+'a'-'A' : i);
+        }
+    }
+
+    private final boolean ignoreCase;
+    private final char[] chars;         //the query, folded if ignoring case
+    private final int[] charSkip = new int[TABLE_SIZE];     //indexed by the low byte of the folded character
+    private final byte[] bytes;         //the query in UTF-8, folded if ignoring case, null if bytes can't be searched
+    private final byte[] fold;          //what each byte of the text is compared as
+    private final int[] byteSkip = new int[TABLE_SIZE];
+    private final boolean ascii;
+
+    public LiteralMatcher(String query,boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        chars = new char[query.length()];
+        boolean ascii = true;
+        boolean searchBytes = true;
+        for(int i = 0; i < chars.length; i++) {
+            final char c = query.charAt(i);
+            chars[i] = fold(c);
+            ascii &= c < 0x80;
+            //a line never has these, and the file might have bytes that don't decode
+            searchBytes &= c != '\n' && c != '\r' && c != '\uFFFD' && !Character.isSurrogate(c);
+        }
+        this.ascii = ascii;
+        fillSkip(charSkip,chars.length);
+        for(int i = 0; i < chars.length-1; i++) {
+            charSkip[chars[i]&0xFF] = chars.length-1-i;
+        }
+
+        fold = ignoreCase ? LOWER_BYTES : SAME_BYTES;
+        if(searchBytes && (ascii || !ignoreCase)) {
+            bytes = new String(chars).getBytes(StandardCharsets.UTF_8);
+            fillSkip(byteSkip,bytes.length);
+            for(int i = 0; i < bytes.length-1; i++) {
+                byteSkip[bytes[i]&0xFF] = bytes.length-1-i;
+            }
+        } else {
+            bytes = null;
+        }
+    }
+
+    /** True if the query can be found in the raw bytes of a file in the charset, instead of decoding each line. */
+    public boolean canSearchBytes(Charset charset) {
+        if(bytes == null) {
+            return false;
+        }
+        if(charset.equals(StandardCharsets.UTF_8)) {
+            return true;
+        }
+        return ascii && (charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII));
+    }
+
+    /** True if the line has the query in it. */
+    public boolean matches(String line) {
+        return indexOf(line,0) >= 0;
+    }
+
+    /** Length of the query, which is also the length of what it matches. */
+    public int length() {
+        return chars.length;
+    }
+
+    /**
+     * Finds the query in the line, starting at from.
+     *
+     * @return position the query starts at, or -1 if it isn't there.
+     */
+    public int indexOf(String line,int from) {
+        final int last = chars.length-1;
+        if(last < 0) {
+            return from <= line.length() ? from : -1;
+        }
+        final char lastChar = chars[last];
+        final int end = line.length()-last;
+        for(int pos = from; pos < end; ) {
+            final char c = fold(line.charAt(pos+last));
+            if(c == lastChar) {
+                int i = last-1;
+                while(i >= 0 && fold(line.charAt(pos+i)) == chars[i]) {
+                    i--;
+                }
+                if(i < 0) {
+                    return pos;
+                }
+            }
+            pos += charSkip[c&0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the query in the bytes from up to but not including to. canSearchBytes() has to be true for the charset
+     * of the bytes.
+     *
+     * @return position the query starts at, or -1 if it isn't there.
+     */
+    public int indexOf(byte[] text,int from,int to) {
+        final int last = bytes.length-1;
+        if(last < 0) {
+            return from < to ? from : -1;
+        }
+        final byte lastByte = bytes[last];
+        final int end = to-last;
+        for(int pos = from; pos < end; ) {
+            final byte b = fold[text[pos+last]&0xFF];
+            if(b == lastByte) {
+                int i = last-1;
+                while(i >= 0 && fold[text[pos+i]&0xFF] == bytes[i]) {
+                    i--;
+                }
+                if(i < 0) {
+                    return pos;
+                }
+            }
+            pos += byteSkip[b&0xFF];
+        }
+        return -1;
+    }
+
+    private char fold(char c) {
+        if(!ignoreCase) {
+            return c;
+        }
+        if(c < 0x80) {
+            return (char)LOWER_BYTES[c];
+        }
+        final char lower = Character.toLowerCase(c);
+        return lower < 0x80 ? c : lower;
+    }
+
+    /** A character that isn't in the query lets the query move past it completely. */
+    private static void fillSkip(int[] skip,int length) {
+        for(int i = 0; i < skip.length; i++) {
+            skip[i] = Math.max(1,length);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Makes up log files to try the viewer on, for `glov makefile`. Most lines are plain entries that start with a
+ * timestamp. Some entries are multi-line exceptions with stack traces, some are JSON after the timestamp, and some
+ * messages have text from outside ASCII in them. How long the messages are is spread out so that short lines are
+ * common and long ones are rare, like a real log.
+ *
+ * The same seed always makes the same lines. At full speed the timestamps are made up too, starting at START_TIME,
+ * so the whole file is the same every time. When writing at a rate, the timestamps are the real time, so following
+ * the file looks like following a live log.
+ *
+ * With a rotate size, once the file gets that big it is renamed to file.1, the older ones move up to file.2 and so
+ * on, and a new file is started, the way logrotate does it.
+ */
+public class LogGenerator {
+    /** Where made up timestamps start, 2018-12-24 00:00:00 UTC. */
+    public static final long START_TIME = 1545609600000L;
+
+    private static final int ROTATED_FILES = 5;     //file.1 to file.5 are kept
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final int BUFFER_SIZE = 1<<16;
+
+    private static final String[] WORDS = {"request","handled","user","session","cache","miss","hit","connection",
+            "pool","retry","queue","order","payment","query","rows","update","timeout","ok","token","refresh",
+            "batch","job","commit","lock","account","status","sent","received","client","server"};
+    private static final String[] UNICODE_WORDS = {"na\u00EFve","Gr\u00F6\u00DFe","caf\u00E9","\u65E5\u672C\u8A9E",
+            "\u0395\u03BB\u03BB\u03B7\u03BD\u03B9\u03BA\u03AC","\u043F\u0440\u0438\u0432\u0435\u0442","\u00A9\u2122",
+            "\u2192","\uD83D\uDE42","\uD83D\uDE80"};     //the last two are emoji, outside the BMP
+    private static final String[] LOGGERS = {"com.example.OrderService","com.example.db.ConnectionPool",
+            "com.example.http.RequestHandler","com.example.cache.CacheManager","com.example.auth.TokenService"};
+    private static final String[] EXCEPTIONS = {"java.lang.IllegalStateException: Connection is closed",
+            "java.util.concurrent.TimeoutException: Timed out after 30000ms",
+            "java.lang.NullPointerException","java.sql.SQLException: Deadlock found when trying to get lock"};
+    private static final String[] CAUSES = {"java.io.IOException: Broken pipe",
+            "java.net.SocketTimeoutException: Read timed out","java.io.EOFException"};
+
+    private final Random random;
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private int tracePercent = 2;
+    private int jsonPercent = 10;
+    private int unicodePercent = 5;
+    private int minLength = 20;
+    private int maxLength = 500;
+    private long time = START_TIME;
+    private boolean realTime;
+
+    public LogGenerator(long seed) {
+        random = new Random(seed);
+        timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * How many entries out of a hundred are of each kind. The rest are plain one line entries.
+     *
+     * @param traces Exceptions with a stack trace.
+     * @param json JSON entries, which are one line each.
+     * @param unicode Messages with characters outside ASCII.
+     */
+    public void setMix(int traces,int json,int unicode) {
+        tracePercent = traces;
+        jsonPercent = json;
+        unicodePercent = unicode;
+    }
+
+    /** Messages are between min and max characters long, with short ones a lot more common then long ones. */
+    public void setMessageLength(int min,int max) {
+        minLength = Math.max(1,min);
+        maxLength = Math.max(minLength,max);
+    }
+
+    /** Use the real time for the timestamps, rather then made up ones. */
+    public void setRealTime(boolean realTime) {
+        this.realTime = realTime;
+    }
+
+    /**
+     * Adds the next entry to out, each line ending with a newline.
+     *
+     * @return the number of lines added.
+     */
+    public int nextEntry(StringBuilder out) {
+        if(realTime) {
+            time = System.currentTimeMillis();
+        } else {
+            time += random.nextInt(50);
+        }
+        final int kind = random.nextInt(100);
+        final boolean unicode = random.nextInt(100) < unicodePercent;
+        if(kind < tracePercent) {
+            return trace(out,unicode);
+        } else if(kind < tracePercent+jsonPercent) {
+            json(out,unicode);
+            return 1;
+        }
+        header(out,level());
+        message(out,unicode);
+        out.append('\n');
+        return 1;
+    }
+
+    /**
+     * Writes lines to out as fast as it can.
+     *
+     * @param lines Number of lines to write. The last entry is cut short if it has more lines then are left.
+     */
+    public void write(OutputStream out,long lines) throws IOException {
+        final StringBuilder entry = new StringBuilder();
+        long written = 0;
+        while(written < lines) {
+            entry.setLength(0);
+            written += cut(entry,nextEntry(entry),lines-written);
+            out.write(entry.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes lines to the file, starting it over if it's there already.
+     *
+     * @param lines Number of lines to write, 0 to keep going until stopped.
+     * @param rate Lines a second to write, 0 for as fast as possible.
+     * @param rotateBytes Size the file is rotated at, 0 to never rotate.
+     */
+    public void write(File f,long lines,int rate,long rotateBytes) throws IOException, InterruptedException {
+        final StringBuilder entry = new StringBuilder();
+        final long start = System.nanoTime();
+        long written = 0;
+        long fileBytes = 0;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(f),BUFFER_SIZE);
+        try {
+            while(lines == 0 || written < lines) {
+                entry.setLength(0);
+                written += cut(entry,nextEntry(entry),lines == 0 ? Long.MAX_VALUE : lines-written);
+                final byte[] bytes = entry.toString().getBytes(StandardCharsets.UTF_8);
+                out.write(bytes);
+                fileBytes += bytes.length;
+                if(rotateBytes > 0 && fileBytes >= rotateBytes) {
+                    out.close();
+                    rotate(f);
+                    out = new BufferedOutputStream(new FileOutputStream(f),BUFFER_SIZE);
+                    fileBytes = 0;
+                }
+                if(rate > 0) {
+                    //sleep until it's time for the lines written so far, so a viewer following sees them arrive
+                    final long wait = start+written*NANOS_PER_SECOND/rate-System.nanoTime();
+                    if(wait > 0) {
+                        out.flush();
+                        Thread.sleep(wait/1000000,(int)(wait%1000000));
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Renames file to file.1, file.1 to file.2 and so on, dropping the oldest. */
+    static void rotate(File f) throws IOException {
+        final File oldest = new File(f.getPath()+"."+ROTATED_FILES);
+        if(oldest.exists() && !oldest.delete()) {
+            throw new IOException("Unable to delete "+oldest);
+        }
+        for(int i = ROTATED_FILES-1; i >= 0; i--) {
+            final File from = i == 0 ? f : new File(f.getPath()+"."+i);
+            final File to = new File(f.getPath()+"."+(i+1));
+            if(from.exists() && !from.renameTo(to)) {
+                throw new IOException("Unable to rename "+from+" to "+to);
+            }
+        }
+    }
+
+    /**
+     * Cuts the entry down to at most max lines.
+     *
+     * @return the number of lines left in it.
+     */
+    private static int cut(StringBuilder entry,int lines,long max) {
+        if(lines <= max) {
+            return lines;
+        }
+        int end = 0;
+        for(int i = 0; i < max; i++) {
+            end = entry.indexOf("\n",end)+1;
+        }
+        entry.setLength(end);
+        return (int)max;
+    }
+
+    private String level() {
+        final int level = random.nextInt(100);
+        if(level < 3) {
+            return "ERROR";
+        } else if(level < 10) {
+            return "WARN ";
+        } else if(level < 20) {
+            return "DEBUG";
+        }
+        return "INFO ";
+    }
+
+    /** The start of a plain entry, like "2018-12-24 14:32:05.123 INFO  [worker-3] com.example.OrderService - " */
+    private void header(StringBuilder out,String level) {
+        out.append(timeFormat.format(new Date(time))).append(' ').append(level)
+                .append(" [worker-").append(random.nextInt(16)).append("] ")
+                .append(LOGGERS[random.nextInt(LOGGERS.length)]).append(" - ");
+    }
+
+    /** Words up to a length picked so that each doubling of the length is about as likely. */
+    private void message(StringBuilder out,boolean unicode) {
+        final int length = (int)Math.round(minLength*Math.pow((double)maxLength/minLength,random.nextDouble()));
+        final int end = out.length()+length;
+        out.append(WORDS[random.nextInt(WORDS.length)]);
+        if(unicode) {
+            out.append(' ').append(UNICODE_WORDS[random.nextInt(UNICODE_WORDS.length)]);
+        }
+        while(out.length() < end) {
+            final int word = random.nextInt(WORDS.length+2);
+            if(word == WORDS.length) {
+                out.append(" user=").append(random.nextInt(100000));
+            } else if(word > WORDS.length) {
+                out.append(" took ").append(random.nextInt(1000)).append("ms");
+            } else {
+                out.append(' ').append(WORDS[word]);
+            }
+        }
+    }
+
+    /** Starts with the timestamp like the other lines, the way a container runtime logs what an app printed. */
+    private void json(StringBuilder out,boolean unicode) {
+        out.append(timeFormat.format(new Date(time)))
+                .append(" {\"level\":\"").append(level().trim())
+                .append("\",\"thread\":\"worker-").append(random.nextInt(16))
+                .append("\",\"logger\":\"").append(LOGGERS[random.nextInt(LOGGERS.length)])
+                .append("\",\"message\":\"");
+        message(out,unicode);   //no quotes or backslashes in the words, so nothing to escape
+        out.append("\",\"user\":").append(random.nextInt(100000))
+                .append(",\"durationMs\":").append(random.nextInt(1000)).append("}\n");
+    }
+
+    private int trace(StringBuilder out,boolean unicode) {
+        header(out,"ERROR");
+        out.append("Request failed: ");
+        message(out,unicode);
+        out.append('\n').append(EXCEPTIONS[random.nextInt(EXCEPTIONS.length)]).append('\n');
+        int lines = 2+frames(out,5+random.nextInt(20));
+        if(random.nextInt(100) < 30) {
+            out.append("Caused by: ").append(CAUSES[random.nextInt(CAUSES.length)]).append('\n');
+            lines += 2+frames(out,3+random.nextInt(5));
+            out.append("\t... ").append(10+random.nextInt(20)).append(" more\n");
+        }
+        return lines;
+    }
+
+    private int frames(StringBuilder out,int count) {
+        for(int i = 0; i < count; i++) {
+            final String logger = LOGGERS[random.nextInt(LOGGERS.length)];
+            final String name = logger.substring(logger.lastIndexOf('.')+1);
+            out.append("\tat ").append(logger).append(".method").append(random.nextInt(40))
+                    .append('(').append(name).append(".java:").append(1+random.nextInt(800)).append(")\n");
+        }
+        return count;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: glov makefile [options] lines [file]");
+        System.out.println("Writes a made up log to the file, or to the screen if there isn't one. With a file, 0 lines");
+        System.out.println("keeps going until stopped.");
+        System.out.println("  --rate n          lines a second, instead of as fast as possible");
+        System.out.println("  --rotate size     rename the file to file.1 once it's this big, like 10M");
+        System.out.println("  --seed n          makes a different log, the same seed makes the same one");
+        System.out.println("  --length min:max  length of the messages, default 20:500");
+        System.out.println("  --traces pct      percent of entries that are stack traces, default 2");
+        System.out.println("  --json pct        percent of entries that are a JSON line, default 10");
+        System.out.println("  --unicode pct     percent of messages with text outside ASCII, default 5");
+        System.exit(1);
+    }
+
+    /** Runs `glov makefile`, with the arguments after "makefile". */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long lines = -1;
+        String filename = null;
+        int rate = 0;
+        long rotateBytes = 0;
+        long seed = 42;
+        int minLength = 20;
+        int maxLength = 500;
+        int traces = 2;
+        int json = 10;
+        int unicode = 5;
+        try {
+            for(int i = 0; i < args.length; i++) {
+                final boolean hasValue = i+1 < args.length;
+                if(args[i].equals("--rate") && hasValue) {
+                    rate = Integer.parseInt(args[++i]);
+                } else if(args[i].equals("--rotate") && hasValue) {
+                    rotateBytes = parseSize(args[++i]);
+                } else if(args[i].equals("--seed") && hasValue) {
+                    seed = Long.parseLong(args[++i]);
+                } else if(args[i].equals("--length") && hasValue) {
+                    final String[] range = args[++i].split(":");
+                    minLength = Integer.parseInt(range[0]);
+                    maxLength = Integer.parseInt(range[range.length-1]);
+                } else if(args[i].equals("--traces") && hasValue) {
+                    traces = Integer.parseInt(args[++i]);
+                } else if(args[i].equals("--json") && hasValue) {
+                    json = Integer.parseInt(args[++i]);
+                } else if(args[i].equals("--unicode") && hasValue) {
+                    unicode = Integer.parseInt(args[++i]);
+                } else if(lines < 0) {
+                    lines = Long.parseLong(args[i]);
+                } else if(filename == null) {
+                    filename = args[i];
+                } else {
+                    usage();
+                }
+            }
+        } catch(NumberFormatException | IndexOutOfBoundsException e) {
+            usage();
+        }
+        if(lines < 0 || rate < 0 || rotateBytes < 0 || (filename == null && (lines == 0 || rotateBytes > 0))) {
+            usage();
+        }
+
+        final LogGenerator generator = new LogGenerator(seed);
+        generator.setMix(traces,json,unicode);
+        generator.setMessageLength(minLength,maxLength);
+        generator.setRealTime(rate > 0);
+        if(filename == null) {
+            generator.write(new BufferedOutputStream(System.out,BUFFER_SIZE),lines);
+        } else {
+            generator.write(new File(filename),lines,rate,rotateBytes);
+        }
+    }
+
+    /** Reads a size like 512, 64K, 10M or 1G. */
+    private static long parseSize(String size) {
+        final String units = "KMG";
+        final int unit = units.indexOf(Character.toUpperCase(size.charAt(size.length()-1)));
+        if(unit < 0) {
+            return Long.parseLong(size);
+        }
+        return Long.parseLong(size.substring(0,size.length()-1))<<(10*(unit+1));
+    }
+}
@@ -0,0 +1,71 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers values by line number, or any other int, keeping the most recently used ones. Once it holds more then
+ * its capacity, the one used longest ago is dropped. Not thread safe.
+ */
+public class LruCache<V> {
+    private final Map<Integer,V> values;
+
+    @SuppressWarnings("serial")
+    public LruCache(int capacity) {
+        values = new LinkedHashMap<Integer,V>(16,0.75f,true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer,V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** The value, or null if it isn't remembered. Counts as a use. */
+    public V get(int key) {
+        return values.get(key);
+    }
+
+    public void put(int key,V value) {
+        values.put(key,value);
+    }
+
+    /** Forgets the keys from fromKey on, because the lines changed. */
+    public void forget(int fromKey) {
+        for(Iterator<Integer> it = values.keySet().iterator(); it.hasNext(); ) {
+            if(it.next() >= fromKey) {
+                it.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        values.clear();
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    /** The values remembered, least recently used first. */
+    public Collection<V> values() {
+        return values.values();
+    }
+}
@@ -0,0 +1,460 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Line source that memory maps the file instead of reading it into memory. The only thing kept on the heap is
+ * the byte offset of where each line starts, so a file with a few million lines costs a few megabytes no matter
+ * how big the lines are. Lines are decoded into Strings when they are asked for.
+ *
+ * A file can be bigger then a single mapping allows, so the file is mapped in segments of SEGMENT_SIZE bytes.
+ * Lines end with '\n'. A '\r' in front of the '\n' is dropped, the same as BufferedReader.readLine() does.
+ *
+ * Finding the newlines is the slow part of opening a big file. Anything over CHUNK_SIZE bytes is split into chunks
+ * that are scanned on the fork/join pool, then the line starts of each chunk are copied into the index in order. A
+ * newline belongs to exactly one chunk, so the only lines that need stitching are the ones that cross a chunk
+ * boundary, and that is only to get their length. Each chunk is read 8 bytes at a time, looking for a '\n' in all
+ * of them at once.
+ */
+public class MappedLineSource implements LineSource {
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L<<SEGMENT_SHIFT;
+    private static final int INITIAL_LINES = 1024;
+    /** Bytes scanned by a single task. A power of 2, so chunks never cross from one segment into the next. */
+    private static final int CHUNK_SIZE = 1<<22;
+    /** Bytes at the start of the file that are kept, to notice it being truncated and written again. */
+    private static final int HEAD_SIZE = 64;
+    /** Bytes copied out of the mapping at a time when searching. */
+    private static final int SEARCH_BUFFER_SIZE = 1<<16;
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private final Charset charset;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private long[] lineStarts;
+    private int startCount;
+    private long sizeBytes;
+    private int maxLineLength;
+    private byte[] head = new byte[0];  //the first bytes of the file
+
+    /** Maps the file, and scans it once to find where the lines start. Uses the platform charset. */
+    public MappedLineSource(File f) throws IOException {
+        this(f,Charset.defaultCharset());
+    }
+
+    public MappedLineSource(File f,Charset charset) throws IOException {
+        this(f,charset,new long[INITIAL_LINES],1,0,0);
+    }
+
+    /**
+     * Maps the file, starting with an index that was saved from an earlier open. Only what was appended to the
+     * file since then is scanned.
+     *
+     * @param lineStarts Where each line starts, the first always being 0. Used as is, not copied.
+     * @param startCount How many of lineStarts are used.
+     * @param indexedSize Number of bytes of the file lineStarts covers. The file can't be smaller then this.
+     * @param maxLineLength Longest line in those bytes.
+     */
+    public MappedLineSource(File f,Charset charset,long[] lineStarts,int startCount,long indexedSize,int maxLineLength)
+            throws IOException {
+        this.charset = charset;
+        this.file = new RandomAccessFile(f,"r");
+        this.channel = file.getChannel();
+        this.lineStarts = lineStarts.length > 0 ? lineStarts : new long[INITIAL_LINES];
+        this.startCount = Math.max(1,startCount);
+        this.sizeBytes = indexedSize;
+        this.maxLineLength = maxLineLength;
+        try {
+            if(channel.size() < indexedSize) {
+                throw new IOException("File is smaller then its index");
+            }
+            index(channel.size());
+        } catch(IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int lineCount() {
+        //the last start is an empty line if the file ends with a newline, so don't count it
+        if(lineStarts[startCount-1] < sizeBytes) {
+            return startCount;
+        }
+        return startCount-1;
+    }
+
+    @Override
+    public String getLine(int lineNum) {
+        if(lineNum < 0 || lineNum >= lineCount()) {
+            throw new IndexOutOfBoundsException("Line "+lineNum+" of "+lineCount());
+        }
+        try {
+            final long start = lineStarts[lineNum];
+            final long end = lineEnd(lineNum);
+            return new String(readBytes(start,(int)(end-start)),charset);
+        } catch(InternalError e) {
+            throw new UncheckedIOException(truncated(e));
+        }
+    }
+
+    /** Number of line starts in the index, including the empty line after a trailing newline. */
+    public int lineStartCount() {
+        return startCount;
+    }
+
+    /** Byte offset the line starts at. Goes up to lineStartCount(), for saving the index. */
+    public long lineStart(int index) {
+        return lineStarts[index];
+    }
+
+    /**
+     * Searches the bytes of the file directly when the literal allows it, and works out which line each hit is on
+     * from the line starts. Lines are copied into a buffer a block at a time, which is a lot quicker to search then
+     * the mapping. Only the first hit on a line is looked for, then the search carries on at the next line.
+     */
+    @Override
+    public IntList find(LiteralMatcher literal,int fromLine,int toLine) {
+        if(!literal.canSearchBytes(charset)) {
+            return LineSource.super.find(literal,fromLine,toLine);
+        }
+        try {
+            return findBytes(literal,fromLine,toLine);
+        } catch(InternalError e) {
+            throw new UncheckedIOException(truncated(e));
+        }
+    }
+
+    private IntList findBytes(LiteralMatcher literal,int fromLine,int toLine) {
+        IntList hits = new IntList();
+        final byte[] buffer = new byte[SEARCH_BUFFER_SIZE];
+        final long rangeEnd = toLine < startCount ? lineStarts[toLine] : sizeBytes;
+        int line = fromLine;
+        while(line < toLine) {
+            final long start = lineStarts[line];
+            int last = toLine;      //lines before this one fit in the buffer
+            long end = rangeEnd;
+            if(end-start > buffer.length) {
+                last = lineAt(start+buffer.length,line,toLine);
+                end = lineStarts[last];
+            }
+            if(last == line) {
+                if(literal.matches(getLine(line))) {
+                    hits.add(line);     //too long for the buffer
+                }
+                line++;
+                continue;
+            }
+            final int length = (int)(end-start);
+            readBytes(start,buffer,length);
+            int pos = 0;
+            int hit;
+            while(pos < length && (hit = literal.indexOf(buffer,pos,length)) >= 0) {
+                final int hitLine = lineAt(start+hit,line,last);
+                hits.add(hitLine);
+                if(hitLine+1 >= last) {
+                    break;
+                }
+                pos = (int)(lineStarts[hitLine+1]-start);
+            }
+            line = last;
+        }
+        return hits;
+    }
+
+    @Override
+    public int maxLineLength() {
+        return maxLineLength;
+    }
+
+    @Override
+    public long sizeBytes() {
+        return sizeBytes;
+    }
+
+    /** The line starts. The file is mapped, so its bytes are not on the heap. */
+    @Override
+    public long heapBytes() {
+        return (long)lineStarts.length*Long.BYTES;
+    }
+
+    @Override
+    public boolean update() throws IOException {
+        return update(Long.MAX_VALUE);
+    }
+
+    /** Doesn't index anything if the file was truncated, even when it has grown past where it was since. */
+    @Override
+    public boolean update(long maxBytes) throws IOException {
+        final long newSize = channel.size();
+        if(newSize <= sizeBytes || isTruncated()) {
+            return false;
+        }
+        index(newSize-sizeBytes > maxBytes ? sizeBytes+maxBytes : newSize);
+        return true;
+    }
+
+    /** Reads the size and the first bytes of the file, not the mapping, which can't be read past the end of the file. */
+    @Override
+    public boolean isTruncated() throws IOException {
+        if(channel.size() < sizeBytes) {
+            return true;
+        }
+        final ByteBuffer now = ByteBuffer.allocate(head.length);
+        while(now.hasRemaining() && channel.read(now,now.position()) > 0) {
+            //keep reading until it's full, or the file ends
+        }
+        return now.hasRemaining() || !Arrays.equals(now.array(),head);
+    }
+
+    @Override
+    public void close() throws IOException {
+        segments = new MappedByteBuffer[0];
+        file.close();
+    }
+
+    /**
+     * Offset of the end of the line, not including the line terminator.
+     *
+     * @param lineNum Line of the file, starting at 0.
+     */
+    private long lineEnd(int lineNum) {
+        long end;
+        if(lineNum+1 < startCount) {
+            end = lineStarts[lineNum+1]-1;  //skip the '\n'
+        } else {
+            end = sizeBytes;                //last line without a newline
+        }
+        if(end > lineStarts[lineNum] && byteAt(end-1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Maps the file up to newSize bytes, and records where each new line starts. Scanning starts at the end of
+     * what was already indexed, so appending to the file only costs the new bytes.
+     */
+    private void index(long newSize) throws IOException {
+        try {
+            scanTo(newSize);
+            if(head.length < HEAD_SIZE && sizeBytes > head.length) {
+                head = readBytes(0,(int)Math.min(sizeBytes,HEAD_SIZE));
+            }
+        } catch(InternalError e) {
+            throw truncated(e);
+        }
+    }
+
+    /**
+     * Reading a mapping past the end of the file, after it was truncated, faults, and the JVM turns that into an
+     * InternalError.
+     */
+    private static IOException truncated(InternalError e) {
+        return new IOException("The file was truncated while it was being read",e);
+    }
+
+    private void scanTo(long newSize) throws IOException {
+        mapTo(newSize);
+        final long from = sizeBytes;
+        final Chunk[] chunks = new Chunk[from == newSize ? 0 : (int)((newSize+CHUNK_SIZE-1)/CHUNK_SIZE-from/CHUNK_SIZE)];
+        for(int i = 0; i < chunks.length; i++) {
+            //after the first, chunks start on a multiple of CHUNK_SIZE
+            final long start = i == 0 ? from : (from/CHUNK_SIZE+i)*CHUNK_SIZE;
+            chunks[i] = new Chunk(start,Math.min(newSize,(start/CHUNK_SIZE+1)*CHUNK_SIZE));
+        }
+        if(chunks.length == 1) {
+            chunks[0].scan();
+        } else if(chunks.length > 1) {
+            ForkJoinPool.commonPool().invoke(new ScanTask(chunks,0,chunks.length));
+        }
+
+        int total = startCount;
+        for(Chunk chunk : chunks) {
+            total += chunk.count;
+        }
+        if(total > lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts,Math.max(total,lineStarts.length*2));
+        }
+        final int firstChanged = Math.max(0,lineCount()-1);    //last line may have been partial
+        int lastLine = firstChanged;
+        for(Chunk chunk : chunks) {
+            if(chunk.count == 0) {
+                continue;
+            }
+            System.arraycopy(chunk.starts,0,lineStarts,startCount,chunk.count);
+            final int crossing = startCount-1;  //started before the chunk, ends at its first newline
+            startCount += chunk.count;
+            lastLine = startCount-1;
+            maxLineLength = Math.max(maxLineLength,chunk.maxLineLength);
+            maxLineLength = Math.max(maxLineLength,lineLength(crossing));
+        }
+        sizeBytes = newSize;
+
+        //lengths are in bytes, which is the number of characters for plain ascii files
+        for(int i = lastLine; i < lineCount(); i++) {
+            maxLineLength = Math.max(maxLineLength,lineLength(i));
+        }
+    }
+
+    private int lineLength(int lineNum) {
+        return (int)(lineEnd(lineNum)-lineStarts[lineNum]);
+    }
+
+    /** The line holding the byte at pos, looking between the lines from and to. */
+    private int lineAt(long pos,int from,int to) {
+        final int line = Arrays.binarySearch(lineStarts,from,to,pos);
+        return line >= 0 ? line : -line-2;
+    }
+
+    /** Makes sure there are mapped segments covering the file up to size bytes. */
+    private void mapTo(long size) throws IOException {
+        final int count = (int)((size+SEGMENT_SIZE-1)>>>SEGMENT_SHIFT);
+        MappedByteBuffer[] mapped = Arrays.copyOf(segments,count);
+        for(int i = 0; i < count; i++) {
+            final long base = (long)i<<SEGMENT_SHIFT;
+            final long length = Math.min(SEGMENT_SIZE,size-base);
+            if(mapped[i] == null || mapped[i].capacity() != length) {
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY,base,length);
+            }
+        }
+        segments = mapped;
+    }
+
+    private byte byteAt(long pos) {
+        return segments[(int)(pos>>>SEGMENT_SHIFT)].get((int)(pos&(SEGMENT_SIZE-1)));
+    }
+
+    /** Copies length bytes starting at pos, which may cross from one segment into the next. */
+    private byte[] readBytes(long pos,int length) {
+        byte[] bytes = new byte[length];
+        readBytes(pos,bytes,length);
+        return bytes;
+    }
+
+    private void readBytes(long pos,byte[] bytes,int length) {
+        int copied = 0;
+        while(copied < length) {
+            ByteBuffer segment = segments[(int)(pos>>>SEGMENT_SHIFT)].duplicate();
+            final int offset = (int)(pos&(SEGMENT_SIZE-1));
+            final int count = Math.min(length-copied,segment.limit()-offset);
+            segment.position(offset);
+            segment.get(bytes,copied,count);
+            copied += count;
+            pos += count;
+        }
+    }
+
+    /** Bytes from start up to end, all in the same segment, and the line starts found in them. */
+    private class Chunk {
+        final long start;
+        final long end;
+        long[] starts = new long[0];
+        int count;
+        int maxLineLength;  //of the lines that start and end in this chunk
+        private long lineStart;     //of the line being scanned, -1 if it started before this chunk
+
+        Chunk(long start,long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void scan() {
+            final ByteBuffer segment = segments[(int)(start>>>SEGMENT_SHIFT)].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            final long segmentBase = start&~(SEGMENT_SIZE-1);
+            final int limit = (int)(end-segmentBase);
+            starts = new long[Math.max(16,(int)(end-start)>>>6)];
+            lineStart = -1;
+            int i = (int)(start-segmentBase);
+            for(; i+8 <= limit; i += 8) {
+                final long word = segment.getLong(i);
+                final long x = word^NEWLINES;
+                long found = (x-LOW_BITS)&~x&HIGH_BITS;     //high bit set in each byte that is zero, and maybe above
+                while(found != 0) {
+                    final int shift = Long.numberOfTrailingZeros(found)-7;
+                    if((word>>>shift&0xFF) == '\n') {
+                        newline(segment,segmentBase,i+(shift>>>3));
+                    }
+                    found &= found-1;
+                }
+            }
+            for(; i < limit; i++) {
+                if(segment.get(i) == '\n') {
+                    newline(segment,segmentBase,i);
+                }
+            }
+        }
+
+        private void newline(ByteBuffer segment,long segmentBase,int i) {
+            final long pos = segmentBase+i;
+            if(lineStart >= 0) {
+                int len = (int)(pos-lineStart);
+                if(len > 0 && segment.get(i-1) == '\r') {
+                    len--;
+                }
+                if(len > maxLineLength) {
+                    maxLineLength = len;
+                }
+            }
+            if(count == starts.length) {
+                starts = Arrays.copyOf(starts,count*2);
+            }
+            lineStart = pos+1;
+            starts[count++] = lineStart;
+        }
+    }
+
+    /** Splits the chunks in half until there is only one left to scan. */
+    @SuppressWarnings("serial")
+    private static class ScanTask extends RecursiveAction {
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        ScanTask(Chunk[] chunks,int from,int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to-from == 1) {
+                chunks[from].scan();
+                return;
+            }
+            final int middle = (from+to)>>>1;
+            invokeAll(new ScanTask(chunks,from,middle),new ScanTask(chunks,middle,to));
+        }
+    }
+}
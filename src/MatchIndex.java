@@ -0,0 +1,78 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+/**
+ * The lines that matched the current search, in ascending order. Searches find lines from the top of the file down,
+ * so the index is built by adding to the end, and finding the next or previous match from a line is a binary search.
+ */
+public class MatchIndex {
+    private final IntList lines = new IntList();
+
+    /**
+     * Adds a matching line. Lines have to be added in ascending order, a line that isn't after the last match is
+     * ignored.
+     */
+    public void add(int lineNum) {
+        if(lines.isEmpty() || lineNum > lines.last()) {
+            lines.add(lineNum);
+        }
+    }
+
+    /** Forget the matches on fromLine and after, for when those lines are going to be searched again. */
+    public void removeFrom(int fromLine) {
+        lines.truncate(position(fromLine));
+    }
+
+    public void clear() {
+        lines.clear();
+    }
+
+    /** Number of matching lines. */
+    public int size() {
+        return lines.size();
+    }
+
+    /** The line of the k'th match, starting at 0. */
+    public int get(int k) {
+        return lines.get(k);
+    }
+
+    /** The first matching line after lineNum, or -1 if there isn't one. */
+    public int next(int lineNum) {
+        final int k = position(lineNum+1);
+        return k < lines.size() ? lines.get(k) : -1;
+    }
+
+    /** The last matching line before lineNum, or -1 if there isn't one. */
+    public int prev(int lineNum) {
+        final int k = position(lineNum)-1;
+        return k >= 0 ? lines.get(k) : -1;
+    }
+
+    /** Which match the line is, starting at 0, or -1 if the line didn't match. */
+    public int indexOf(int lineNum) {
+        final int k = lines.binarySearch(lineNum);
+        return k >= 0 ? k : -1;
+    }
+
+    /** Index of the first match at or after lineNum, which is size() if there isn't one. */
+    public int position(int lineNum) {
+        final int k = lines.binarySearch(lineNum);
+        return k >= 0 ? k : -k-1;
+    }
+}
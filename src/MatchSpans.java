@@ -0,0 +1,66 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+/**
+ * Where the search matches in each line, so the matching text can be highlighted. The search itself only records
+ * which lines matched. The positions are worked out when a line is drawn, so a search with millions of hits only
+ * costs something for the lines that are actually looked at.
+ *
+ * The last CAPACITY lines drawn are kept, so scrolling back and forth doesn't run the search on them again. One of
+ * these is made for each search, so the cache is keyed by the query as well as the line.
+ */
+public class MatchSpans {
+    private static final int CAPACITY = 512;
+
+    private final SearchEngine engine;
+    private final LruCache<int[]> spans = new LruCache<>(CAPACITY);
+
+    public MatchSpans(SearchEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Returns where the search matches in the line.
+     *
+     * @param lineNum Line of the file, the spans are remembered by it.
+     * @param line The text of the line.
+     * @return the start and end of each match, one after the other.
+     */
+    public int[] get(int lineNum,String line) {
+        int[] found = spans.get(lineNum);
+        if(found == null) {
+            found = engine.spans(line);
+            spans.put(lineNum,found);
+        }
+        return found;
+    }
+
+    /** Forgets the lines from fromLine on, because they changed. */
+    public void forget(int fromLine) {
+        spans.forget(fromLine);
+    }
+
+    public void clear() {
+        spans.clear();
+    }
+
+    /** Number of lines remembered. */
+    public int size() {
+        return spans.size();
+    }
+}
@@ -0,0 +1,298 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Shows several log files as one, with the entries interleaved by their timestamp. Each file keeps a cursor at the
+ * next line that hasn't been merged yet, and a priority queue picks the file whose next entry is earliest. Lines
+ * without a timestamp, like stack traces, stay with the entry before them.
+ *
+ * The merge is done lazily. Opening costs nothing, and lines are only merged up to the furthest line that has been
+ * asked for, so looking at the start of a few huge files only reads the start of each. The merged order is kept as
+ * runs of lines from the same file, which is much smaller then a file and line number for every line.
+ *
+ * When the files grow, the new lines are merged after everything merged so far. Lines already shown never move,
+ * even if a new line has an earlier timestamp. A file's last line may have been merged before it was finished, so
+ * takeFirstChanged() says how far back the merged lines changed.
+ *
+ * Merging is locked, but reading a line that was merged already isn't, so the search can read lines on several
+ * threads at once. The runs only ever get added to, and after each merge a Runs is published with how many there
+ * are, which readers look the line up in.
+ */
+public class MergedLineSource implements LineSource {
+    private static final int INITIAL_RUNS = 64;
+
+    private final LineSource[] sources;
+    private final String[] names;
+    private final int[] nextLine;           //of each source, the first line not merged yet
+    private final long[] nextTime;          //timestamp of that line
+    private final boolean[] queued;
+    private final PriorityQueue<Integer> queue;
+    private final int[] lastMerged;         //of each source, the merged line its last merged line is at
+    private int[] runStarts = new int[INITIAL_RUNS];    //merged line number the run starts at
+    private int[] runSources = new int[INITIAL_RUNS];
+    private int[] runLines = new int[INITIAL_RUNS];     //line of the source the run starts at
+    private int runCount;
+    private int mergedCount;
+    private volatile Runs runs = new Runs(this);
+    private int firstChanged = Integer.MAX_VALUE;
+    private int firstUpdated;               //source update(maxBytes) starts with, taking turns
+
+    /**
+     * @param sources The files to merge.
+     * @param names Name to tag the lines of each source with.
+     */
+    public MergedLineSource(LineSource[] sources,String[] names) {
+        this.sources = sources.clone();
+        this.names = names.clone();
+        nextLine = new int[sources.length];
+        nextTime = new long[sources.length];
+        queued = new boolean[sources.length];
+        lastMerged = new int[sources.length];
+        queue = new PriorityQueue<>(Math.max(1,sources.length),(a,b) -> {
+            final int compare = Long.compare(nextTime[a],nextTime[b]);
+            return compare != 0 ? compare : Integer.compare(a,b);
+        });
+        for(int i = 0; i < sources.length; i++) {
+            enqueue(i);
+        }
+    }
+
+    /** Number of files being merged. */
+    public int sourceCount() {
+        return sources.length;
+    }
+
+    /** The name of a source, as given to the constructor. */
+    public String sourceName(int source) {
+        return names[source];
+    }
+
+    /** Which source the line comes from. */
+    public int sourceOf(int lineNum) {
+        final Runs merged = mergedTo(lineNum+1);
+        return merged.sources[merged.runOf(lineNum)];
+    }
+
+    @Override
+    public int lineCount() {
+        int count = 0;
+        for(LineSource source : sources) {
+            count += source.lineCount();
+        }
+        return count;
+    }
+
+    @Override
+    public String getLine(int lineNum) {
+        if(lineNum < 0 || lineNum >= lineCount()) {
+            throw new IndexOutOfBoundsException("Line "+lineNum+" of "+lineCount());
+        }
+        final Runs merged = mergedTo(lineNum+1);
+        final int run = merged.runOf(lineNum);
+        return sources[merged.sources[run]].getLine(merged.lines[run]+lineNum-merged.starts[run]);
+    }
+
+    @Override
+    public int maxLineLength() {
+        int max = 0;
+        for(LineSource source : sources) {
+            max = Math.max(max,source.maxLineLength());
+        }
+        return max;
+    }
+
+    /** The files being merged, and the runs of lines taken from each. */
+    @Override
+    public long heapBytes() {
+        long bytes = (long)(runStarts.length+runSources.length+runLines.length+lastMerged.length)*Integer.BYTES;
+        for(LineSource source : sources) {
+            bytes += source.heapBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long sizeBytes() {
+        long size = 0;
+        for(LineSource source : sources) {
+            size += source.sizeBytes();
+        }
+        return size;
+    }
+
+    /** Updates every file. New lines are merged after the lines that were merged already. */
+    @Override
+    public boolean update() throws IOException {
+        return update(Long.MAX_VALUE);
+    }
+
+    /**
+     * The files read up to maxBytes between them. Each call starts with the next file, so one that is written to
+     * quickly can't use it all every time and leave the others behind.
+     */
+    @Override
+    public synchronized boolean update(long maxBytes) throws IOException {
+        boolean grew = false;
+        long remaining = maxBytes;
+        for(int n = 0; n < sources.length && remaining > 0; n++) {
+            final int i = (firstUpdated+n)%sources.length;
+            final int lineCount = sources[i].lineCount();
+            final long size = sources[i].sizeBytes();
+            if(sources[i].update(remaining)) {
+                remaining -= Math.max(0,sources[i].sizeBytes()-size);
+                grew = true;
+                if(lineCount > 0 && nextLine[i] == lineCount) {
+                    firstChanged = Math.min(firstChanged,lastMerged[i]);    //its last line may have been extended
+                }
+                if(!queued[i]) {
+                    enqueue(i);     //ran out before, has more now
+                }
+            }
+        }
+        firstUpdated = sources.length == 0 ? 0 : (firstUpdated+1)%sources.length;
+        return grew;
+    }
+
+    @Override
+    public boolean isTruncated() throws IOException {
+        for(LineSource source : sources) {
+            if(source.isTruncated()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The first merged line that may have changed since the last call, because it was the last line of a file and
+     * more was written to it. Integer.MAX_VALUE if none did.
+     */
+    public synchronized int takeFirstChanged() {
+        final int first = firstChanged;
+        firstChanged = Integer.MAX_VALUE;
+        return first;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for(LineSource source : sources) {
+            try {
+                source.close();
+            } catch(IOException e) {
+                error = e;
+            }
+        }
+        if(error != null) {
+            throw error;
+        }
+    }
+
+    /** The runs, with at least count lines merged unless every file ran out first. */
+    private Runs mergedTo(int count) {
+        final Runs merged = runs;
+        if(merged.mergedCount >= count) {
+            return merged;
+        }
+        synchronized(this) {
+            mergeTo(count);
+            runs = new Runs(this);
+            return runs;
+        }
+    }
+
+    /** Merges until there are at least count lines merged, or every file has run out. */
+    private void mergeTo(int count) {
+        while(mergedCount < count && !queue.isEmpty()) {
+            final int source = queue.poll();
+            queued[source] = false;
+            final LineSource lines = sources[source];
+            final int available = lines.lineCount();
+            final int from = nextLine[source];
+            int to = from+1;
+            long time = Timestamps.NO_TIME;
+            while(to < available && (time = Timestamps.parse(lines.getLine(to))) == Timestamps.NO_TIME) {
+                to++;   //no timestamp, so it belongs to the entry above
+            }
+            addRun(source,from,to-from);
+            nextLine[source] = to;
+            if(to < available) {
+                nextTime[source] = time;
+                queued[source] = true;
+                queue.add(source);
+            }
+        }
+    }
+
+    /** Puts the source in the queue, if it has lines that haven't been merged. */
+    private void enqueue(int source) {
+        if(nextLine[source] < sources[source].lineCount()) {
+            nextTime[source] = Timestamps.parse(sources[source].getLine(nextLine[source]));
+            queued[source] = true;
+            queue.add(source);
+        }
+    }
+
+    private void addRun(int source,int line,int count) {
+        final int last = runCount-1;
+        if(last < 0 || runSources[last] != source || runLines[last]+mergedCount-runStarts[last] != line) {
+            if(runCount == runStarts.length) {
+                //copies, so readers still looking at the old arrays aren't disturbed
+                runStarts = Arrays.copyOf(runStarts,runCount*2);
+                runSources = Arrays.copyOf(runSources,runCount*2);
+                runLines = Arrays.copyOf(runLines,runCount*2);
+            }
+            runStarts[runCount] = mergedCount;
+            runSources[runCount] = source;
+            runLines[runCount] = line;
+            runCount++;
+        }
+        mergedCount += count;   //when it wasn't a new run, it carries on from the one before
+        lastMerged[source] = mergedCount-1;
+    }
+
+    /**
+     * The runs merged so far. Runs below count never change once they're added, and the arrays are only replaced by
+     * bigger copies, so this can be read without the lock.
+     */
+    private static class Runs {
+        final int[] starts;
+        final int[] sources;
+        final int[] lines;
+        final int count;
+        final int mergedCount;
+
+        Runs(MergedLineSource merged) {
+            starts = merged.runStarts;
+            sources = merged.runSources;
+            lines = merged.runLines;
+            count = merged.runCount;
+            mergedCount = merged.mergedCount;
+        }
+
+        /** The run holding the merged line. */
+        int runOf(int lineNum) {
+            final int run = Arrays.binarySearch(starts,0,count,lineNum);
+            return run >= 0 ? run : -run-2;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import com.axorion.NConsole;
+
+/** Terminal that uses NConsole, which is ncurses on Linux and macOS. */
+public class NCursesConsole implements Terminal {
+    private final NConsole console = new NConsole();
+
+    @Override
+    public int initscr() {
+        return console.initscr();
+    }
+
+    @Override
+    public int endwin() {
+        return console.endwin();
+    }
+
+    @Override
+    public int initPair(int pair,int foreground,int background) {
+        return console.initPair(pair,foreground,background);
+    }
+
+    @Override
+    public int timeout(int delay) {
+        return console.timeout(delay);
+    }
+
+    @Override
+    public int getch() {
+        return console.getch();
+    }
+
+    @Override
+    public boolean updateSize() {
+        return console.updateSize();
+    }
+
+    @Override
+    public int getWidth() {
+        return console.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return console.getHeight();
+    }
+
+    @Override
+    public int move(int x,int y) {
+        return console.move(x,y);
+    }
+
+    @Override
+    public int attron(int pair) {
+        return console.attron(pair);
+    }
+
+    @Override
+    public int attroff(int pair) {
+        return console.attroff(pair);
+    }
+
+    @Override
+    public int printw(String text) {
+        return console.printw(text);
+    }
+
+    @Override
+    public int clear() {
+        return console.clear();
+    }
+
+    @Override
+    public int refresh() {
+        return console.refresh();
+    }
+}
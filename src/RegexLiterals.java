@@ -0,0 +1,225 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+/**
+ * Finds text that every match of a regular expression has to contain, like "error" in "error.*timeout". A line
+ * without that text can't match, and checking for plain text is a lot cheaper then running the expression.
+ *
+ * Only the top level of the expression is looked at. Anything in a group or a character class is skipped, and an
+ * alternation at the top level means there is nothing required. Whenever the expression uses something this doesn't
+ * understand, like an escape with a code point or inline flags, no text is returned, so the worst that can happen
+ * is the expression gets run on every line like before.
+ */
+public final class RegexLiterals {
+    private static final String SIMPLE_ESCAPES = "tnrfae";
+    private static final String SIMPLE_ESCAPED = "\t\n\r\f\u001B\u0007";
+    private static final String CLASS_ESCAPES = "dDwWsShHvVbBAGzZR";
+
+    private RegexLiterals() {
+    }
+
+    /**
+     * Returns the longest run of plain text that any match of the expression has in it.
+     *
+     * @param regex A valid regular expression, compiled without flags.
+     * @return the text, or null if there isn't any or the expression is too complicated to tell.
+     */
+    public static String required(String regex) {
+        final StringBuilder run = new StringBuilder();
+        String best = "";
+        boolean lastWasText = false;   //so a quantifier knows it applies to the last character of the run
+        int i = 0;
+        while(i < regex.length()) {
+            final char c = regex.charAt(i);
+            if(c == '*' || c == '?' || c == '+' || c == '{') {
+                if(lastWasText && c != '+') {
+                    dropLastChar(run);  //might not be there at all
+                }
+                best = longer(best,run);
+                run.setLength(0);
+                if(c == '{') {
+                    i = regex.indexOf('}',i);
+                    if(i < 0) {
+                        return null;
+                    }
+                }
+                i++;
+                if(i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                    i++;    //lazy or possessive
+                }
+                lastWasText = false;
+                continue;
+            }
+            lastWasText = false;
+            switch(c) {
+                case '\\':
+                    if(i+1 >= regex.length()) {
+                        return null;
+                    }
+                    final char e = regex.charAt(i+1);
+                    if(e == 'Q') {
+                        int end = regex.indexOf("\\E",i+2);
+                        if(end < 0) {
+                            end = regex.length();
+                        }
+                        if(end == i+2) {
+                            return null;    //nothing quoted, so a quantifier after it is hard to place
+                        }
+                        run.append(regex,i+2,end);
+                        lastWasText = true;
+                        i = end+2;
+                    } else if(!Character.isLetterOrDigit(e)) {
+                        run.append(e);
+                        lastWasText = true;
+                        i += 2;
+                    } else if(SIMPLE_ESCAPES.indexOf(e) >= 0) {
+                        run.append(SIMPLE_ESCAPED.charAt(SIMPLE_ESCAPES.indexOf(e)));
+                        lastWasText = true;
+                        i += 2;
+                    } else if(CLASS_ESCAPES.indexOf(e) >= 0) {
+                        best = longer(best,run);
+                        run.setLength(0);
+                        i += 2;
+                    } else {
+                        return null;    //code points, properties, back references...
+                    }
+                    break;
+                case '[':
+                    best = longer(best,run);
+                    run.setLength(0);
+                    i = skipClass(regex,i);
+                    if(i < 0) {
+                        return null;
+                    }
+                    break;
+                case '(':
+                    if(regex.startsWith("(?",i) && !isGroup(regex,i+2)) {
+                        return null;    //inline flags change how the rest is matched
+                    }
+                    best = longer(best,run);
+                    run.setLength(0);
+                    i = skipGroup(regex,i);
+                    if(i < 0) {
+                        return null;
+                    }
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                    best = longer(best,run);
+                    run.setLength(0);
+                    i++;
+                    break;
+                case '|':
+                case ')':
+                    return null;
+                default:
+                    run.append(c);
+                    lastWasText = true;
+                    i++;
+                    break;
+            }
+        }
+        best = longer(best,run);
+        return best.isEmpty() ? null : best;
+    }
+
+    private static String longer(String best,StringBuilder run) {
+        return run.length() > best.length() ? run.toString() : best;
+    }
+
+    /** Takes the last character off the run, both halves if it is a surrogate pair. */
+    private static void dropLastChar(StringBuilder run) {
+        int length = run.length();
+        if(length == 0) {
+            return;
+        }
+        length--;
+        if(length > 0 && Character.isLowSurrogate(run.charAt(length)) && Character.isHighSurrogate(run.charAt(length-1))) {
+            length--;
+        }
+        run.setLength(length);
+    }
+
+    /** True if what follows "(?" starts a group, rather then setting flags. */
+    private static boolean isGroup(String regex,int i) {
+        if(i >= regex.length()) {
+            return false;
+        }
+        final char c = regex.charAt(i);
+        if(c == ':' || c == '=' || c == '!' || c == '>') {
+            return true;
+        }
+        return c == '<' && i+1 < regex.length() && (regex.charAt(i+1) == '=' || regex.charAt(i+1) == '!'
+                || Character.isLetter(regex.charAt(i+1)));
+    }
+
+    /** Index just past the ')' closing the group that starts at i, or -1. */
+    private static int skipGroup(String regex,int i) {
+        int depth = 0;
+        while(i < regex.length()) {
+            final char c = regex.charAt(i);
+            if(c == '\\') {
+                i = skipEscape(regex,i);
+                continue;
+            } else if(c == '[') {
+                i = skipClass(regex,i);
+                if(i < 0) {
+                    return -1;
+                }
+                continue;
+            } else if(c == '(') {
+                depth++;
+            } else if(c == ')' && --depth == 0) {
+                return i+1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /** Index just past the ']' closing the class that starts at i, or -1. */
+    private static int skipClass(String regex,int i) {
+        int depth = 0;
+        while(i < regex.length()) {
+            final char c = regex.charAt(i);
+            if(c == '\\') {
+                i = skipEscape(regex,i);
+                continue;
+            } else if(c == '[') {
+                depth++;
+                if(regex.startsWith("]",i+1) || regex.startsWith("^]",i+1)) {
+                    return -1;  //a ']' that is part of the class
+                }
+            } else if(c == ']' && --depth == 0) {
+                return i+1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /** Index just past the escape at i. Quoted text is skipped as a whole. */
+    private static int skipEscape(String regex,int i) {
+        if(regex.startsWith("\\Q",i)) {
+            final int end = regex.indexOf("\\E",i+2);
+            return end < 0 ? regex.length() : end+2;
+        }
+        return i+2;
+    }
+}
@@ -0,0 +1,276 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.util.Arrays;
+
+/**
+ * Sits in front of the console and keeps what is drawn in memory. Drawing only changes the buffer, nothing is sent
+ * to the terminal until refresh(). Refresh compares the buffer with what was sent last time, and only sends the
+ * cells that changed, one printw per run of changed cells with the same color pair. If nothing changed, refresh
+ * doesn't talk to the terminal at all.
+ *
+ * The drawing methods work like the Terminal ones they replace. Text that goes past the right edge wraps onto the
+ * next line, '\n' clears the rest of the line and moves to the start of the next, and tabs are expanded.
+ * getch() refreshes first, the same as curses does.
+ */
+public class ScreenBuffer {
+    private static final char BLANK = ' ';
+    private static final int NO_PAIR = 0;
+    private static final int TAB_SIZE = 8;
+
+    private final Terminal console;
+    private int width;
+    private int height;
+    private char[] chars = new char[0];         //what we want on the screen
+    private int[] pairs = new int[0];
+    private char[] shownChars = new char[0];    //what was sent to the terminal
+    private int[] shownPairs = new int[0];
+    private int cursorX;
+    private int cursorY;
+    private int shownCursorX = -1;
+    private int shownCursorY = -1;
+    private int currentPair = NO_PAIR;
+    private boolean changed;
+    private boolean clearScreen;
+    private long calls;         //sent to the terminal
+
+    public ScreenBuffer(Terminal console) {
+        this.console = console;
+    }
+
+    public int initscr() {
+        final int result = console.initscr();
+        resize(console.getWidth(),console.getHeight());
+        return result;
+    }
+
+    public int endwin() {
+        return console.endwin();
+    }
+
+    public int initPair(int pair,int foreground,int background) {
+        return console.initPair(pair,foreground,background);
+    }
+
+    public int timeout(int delay) {
+        return console.timeout(delay);
+    }
+
+    /** Sends any changes to the terminal, then waits for a key like the console does. */
+    public int getch() {
+        refresh();
+        return console.getch();
+    }
+
+    /**
+     * Checks the terminal size. If it changed the buffer is resized and the next refresh redraws everything.
+     *
+     * @return true if the size changed.
+     */
+    public boolean updateSize() {
+        if(console.updateSize()) {
+            resize(console.getWidth(),console.getHeight());
+            return true;
+        }
+        return false;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Number of drawing calls sent to the terminal so far. With the real console, each one is a JNI call. */
+    public long getCallCount() {
+        return calls;
+    }
+
+    public void home() {
+        move(0,0);
+    }
+
+    public void move(int x,int y) {
+        cursorX = x;
+        cursorY = y;
+    }
+
+    public void attron(int pair) {
+        currentPair = pair;
+    }
+
+    public void attroff(int pair) {
+        currentPair = NO_PAIR;
+    }
+
+    /** Put the text at the cursor using the current color pair. */
+    public void printw(String text) {
+        for(int i = 0; i < text.length(); i++) {
+            final char ch = text.charAt(i);
+            if(ch == '\n') {
+                clrtoeol();
+                move(0,cursorY+1);
+            } else if(ch == '\t') {
+                do {
+                    put(BLANK);
+                } while(cursorX%TAB_SIZE != 0 && cursorX < width);
+            } else if(ch < ' ') {
+                put('^');   //control characters are shown like curses does, ^A etc.
+                put((char)(ch+'@'));
+            } else {
+                put(ch);
+            }
+        }
+    }
+
+    /** Put count copies of ch at the cursor. */
+    public void fill(int count,char ch) {
+        for(int i = 0; i < count; i++) {
+            put(ch);
+        }
+    }
+
+    /** Shows msg centered on line y. */
+    public void printCenterX(int y,String msg) {
+        move(Math.max(0,(width-msg.length())/2),y);
+        printw(msg);
+    }
+
+    /** Blank from the cursor to the end of the line. The cursor doesn't move. */
+    public void clrtoeol() {
+        if(cursorY >= 0 && cursorY < height && cursorX < width) {
+            final int from = cursorY*width+Math.max(0,cursorX);
+            final int to = (cursorY+1)*width;
+            Arrays.fill(chars,from,to,BLANK);
+            Arrays.fill(pairs,from,to,NO_PAIR);
+            changed = true;
+        }
+    }
+
+    /** Blank the whole screen. The terminal is cleared on the next refresh, so no artifacts are left behind. */
+    public void clear() {
+        Arrays.fill(chars,BLANK);
+        Arrays.fill(pairs,NO_PAIR);
+        move(0,0);
+        clearScreen = true;
+        changed = true;
+    }
+
+    /** Sends whatever changed since the last refresh to the terminal. Does nothing if there weren't any changes. */
+    public void refresh() {
+        boolean sent = false;
+        if(clearScreen) {
+            console.clear();
+            calls++;
+            Arrays.fill(shownChars,BLANK);
+            Arrays.fill(shownPairs,NO_PAIR);
+            clearScreen = false;
+            sent = true;
+        }
+        if(changed) {
+            sent |= sendChanges();
+            changed = false;
+        }
+        final int x = Math.max(0,Math.min(cursorX,width-1));
+        final int y = Math.max(0,Math.min(cursorY,height-1));
+        if(sent || x != shownCursorX || y != shownCursorY) {
+            console.move(x,y);
+            console.refresh();
+            calls += 2;
+            shownCursorX = x;
+            shownCursorY = y;
+        }
+    }
+
+    /**
+     * Sends each run of changed cells that share a color pair with one printw.
+     *
+     * @return true if anything was sent.
+     */
+    private boolean sendChanges() {
+        boolean sent = false;
+        int shownPair = NO_PAIR;
+        StringBuilder run = new StringBuilder();
+        for(int y = 0; y < height; y++) {
+            final int rowStart = y*width;
+            int x = 0;
+            while(x < width) {
+                int i = rowStart+x;
+                if(chars[i] == shownChars[i] && pairs[i] == shownPairs[i]) {
+                    x++;
+                    continue;
+                }
+                final int runPair = pairs[i];
+                final int runX = x;
+                run.setLength(0);
+                while(x < width && pairs[i] == runPair && (chars[i] != shownChars[i] || pairs[i] != shownPairs[i])) {
+                    run.append(chars[i]);
+                    shownChars[i] = chars[i];
+                    shownPairs[i] = pairs[i];
+                    x++;
+                    i++;
+                }
+                if(runPair != shownPair) {
+                    if(runPair == NO_PAIR) {
+                        console.attroff(shownPair);
+                    } else {
+                        console.attron(runPair);
+                    }
+                    shownPair = runPair;
+                    calls++;
+                }
+                console.move(runX,y);
+                console.printw(run.toString());
+                calls += 2;
+                sent = true;
+            }
+        }
+        if(shownPair != NO_PAIR) {
+            console.attroff(shownPair);
+            calls++;
+        }
+        return sent;
+    }
+
+    /** Puts a single character at the cursor, and moves the cursor on, wrapping at the right edge. */
+    private void put(char ch) {
+        if(cursorX >= width) {
+            cursorX = 0;
+            cursorY++;
+        }
+        if(cursorY >= 0 && cursorY < height && cursorX >= 0) {
+            final int i = cursorY*width+cursorX;
+            chars[i] = ch;
+            pairs[i] = currentPair;
+            changed = true;
+        }
+        cursorX++;
+    }
+
+    private void resize(int newWidth,int newHeight) {
+        width = Math.max(0,newWidth);
+        height = Math.max(0,newHeight);
+        chars = new char[width*height];
+        pairs = new int[width*height];
+        shownChars = new char[width*height];
+        shownPairs = new int[width*height];
+        clear();
+    }
+}
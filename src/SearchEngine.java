@@ -0,0 +1,196 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Finds the lines of a file that match a query. The query is prepared once, then the lines are split into
+ * chunks that are searched on the fork/join pool, so every core gets a piece of the file. The hits of each chunk
+ * are joined back together in line order.
+ *
+ * Plain text is found with a LiteralMatcher, which folds case as it compares and lets a memory mapped file search
+ * its bytes without making a String of each line. For regular expressions, when ignoring case, both the expression
+ * and the line are lower cased before matching.
+ *
+ * Most expressions have some plain text that every match has in it, which RegexLiterals finds. Lines without that
+ * text are skipped without running the expression. When ignoring case, the text is only looked for in lines that
+ * are all ASCII, since String.toLowerCase() can turn other characters into ASCII ones, and the lines that aren't
+ * are always given to the expression. Either way the same lines match as without the check.
+ */
+public class SearchEngine {
+    /** Number of lines a single task searches before it is worth splitting the work. */
+    private static final int CHUNK_LINES = 8192;
+
+    private final Pattern pattern;
+    private final LiteralMatcher literal;
+    private final LiteralMatcher required;  //text every match of the pattern has, null if there isn't any
+    private volatile boolean requiredIsRare = true;     //false once most lines turn out to have it anyway
+    private final boolean ignoreCase;
+
+    /**
+     * Prepares a search.
+     *
+     * @param query Text or regular expression to look for.
+     * @param useRegex true if query is a regular expression.
+     * @param ignoreCase true to ignore case.
+     * @throws PatternSyntaxException if useRegex is set and query isn't a valid regular expression.
+     */
+    public SearchEngine(String query,boolean useRegex,boolean ignoreCase) throws PatternSyntaxException {
+        this.ignoreCase = ignoreCase;
+        this.pattern = useRegex ? Pattern.compile(ignoreCase ? query.toLowerCase() : query) : null;
+        this.literal = useRegex ? null : new LiteralMatcher(query,ignoreCase);
+        final String text = useRegex ? RegexLiterals.required(pattern.pattern()) : null;
+        this.required = text == null || ignoreCase && !isAscii(text) ? null : new LiteralMatcher(text,ignoreCase);
+    }
+
+    /** Checks if a single line matches. Safe to call from any thread. */
+    public boolean matches(String line) {
+        if(literal != null) {
+            return literal.matches(line);
+        }
+        if(requiredIsRare && !mightMatch(line)) {
+            return false;
+        }
+        final String row = ignoreCase ? line.toLowerCase() : line;
+        return pattern.matcher(row).find();
+    }
+
+    /** False if the line can't match because it doesn't have the required text. */
+    private boolean mightMatch(String line) {
+        return required == null || required.matches(line) || ignoreCase && !isAscii(line);
+    }
+
+    /**
+     * Finds where the query matches in the line, for highlighting. Matches don't overlap, and empty matches are left
+     * out. If ignoring case made a regular expression's line a different length, the positions can't be mapped
+     * back, and there are none.
+     *
+     * @return the start and end of each match, one after the other.
+     */
+    public int[] spans(String line) {
+        IntList spans = new IntList();
+        if(literal != null) {
+            final int length = literal.length();
+            for(int pos = 0; length > 0 && (pos = literal.indexOf(line,pos)) >= 0; pos += length) {
+                spans.add(pos);
+                spans.add(pos+length);
+            }
+            return spans.toArray();
+        }
+        final String row = ignoreCase ? line.toLowerCase() : line;
+        if(row.length() == line.length()) {
+            final Matcher matcher = pattern.matcher(row);
+            while(matcher.find()) {
+                if(matcher.end() > matcher.start()) {
+                    spans.add(matcher.start());
+                    spans.add(matcher.end());
+                }
+            }
+        }
+        return spans.toArray();
+    }
+
+    /**
+     * Searches the lines from fromLine up to but not including toLine.
+     *
+     * @return the matching line numbers, in ascending order.
+     */
+    public IntList search(LineSource lines,int fromLine,int toLine) {
+        if(toLine-fromLine <= CHUNK_LINES) {
+            return searchRange(lines,fromLine,toLine);
+        }
+        return ForkJoinPool.commonPool().invoke(new SearchTask(lines,fromLine,toLine));
+    }
+
+    private IntList searchRange(LineSource lines,int fromLine,int toLine) {
+        if(literal != null) {
+            return lines.find(literal,fromLine,toLine);
+        }
+        IntList hits = new IntList();
+        if(required != null && !ignoreCase && requiredIsRare) {
+            //only the lines with the required text can match, and the source may be able to search its bytes for it
+            IntList candidates = lines.find(required,fromLine,toLine);
+            if(candidates.size() > (toLine-fromLine)/2) {
+                requiredIsRare = false;     //looking for it first costs more then it saves
+            }
+            for(int i = 0; i < candidates.size(); i++) {
+                final int line = candidates.get(i);
+                if(pattern.matcher(lines.getLine(line)).find()) {
+                    hits.add(line);
+                }
+            }
+            return hits;
+        }
+        final boolean prefilter = required != null && requiredIsRare;
+        int candidates = 0;
+        for(int i = fromLine; i < toLine; i++) {
+            final String line = lines.getLine(i);
+            if(prefilter && !mightMatch(line)) {
+                continue;
+            }
+            candidates++;
+            if(pattern.matcher(ignoreCase ? line.toLowerCase() : line).find()) {
+                hits.add(i);
+            }
+        }
+        if(prefilter && candidates > (toLine-fromLine)/2) {
+            requiredIsRare = false;
+        }
+        return hits;
+    }
+
+    private static boolean isAscii(String s) {
+        for(int i = 0; i < s.length(); i++) {
+            if(s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Splits the range in half until it is small enough to search directly. */
+    @SuppressWarnings("serial")
+    private class SearchTask extends RecursiveTask<IntList> {
+        private final LineSource lines;
+        private final int fromLine;
+        private final int toLine;
+
+        SearchTask(LineSource lines,int fromLine,int toLine) {
+            this.lines = lines;
+            this.fromLine = fromLine;
+            this.toLine = toLine;
+        }
+
+        @Override
+        protected IntList compute() {
+            if(toLine-fromLine <= CHUNK_LINES) {
+                return searchRange(lines,fromLine,toLine);
+            }
+            final int middle = (fromLine+toLine)>>>1;
+            SearchTask right = new SearchTask(lines,middle,toLine);
+            right.fork();
+            IntList hits = new SearchTask(lines,fromLine,middle).compute();
+            hits.addAll(right.join());
+            return hits;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+/**
+ * Runs a search on a background thread so the screen keeps updating while a big file is searched. The lines are
+ * searched a block at a time from the top of the file down. After each block the hits are handed over, so the
+ * viewer can pick them up with takeHits() while the rest of the file is still being searched.
+ *
+ * The job can be cancelled between blocks. If reading or matching a line fails, the job stops and getError() says
+ * why.
+ */
+public class SearchJob implements Runnable {
+    /** Lines searched before handing over hits and checking for cancel. */
+    private static final int BLOCK_LINES = 65536;
+
+    private final SearchEngine engine;
+    private final LineSource lines;
+    private final int fromLine;
+    private final int toLine;
+    private final IntList hits = new IntList();
+    private Thread thread;
+    private volatile int linesScanned;
+    private volatile int hitCount;
+    private volatile long elapsedNanos;
+    private volatile boolean cancelled;
+    private volatile boolean done;
+    private volatile Throwable error;
+
+    /**
+     * @param engine The prepared search.
+     * @param lines Where to get the lines from. Must not be updated while the job is running.
+     * @param fromLine First line to search.
+     * @param toLine Search up to but not including this line.
+     */
+    public SearchJob(SearchEngine engine,LineSource lines,int fromLine,int toLine) {
+        this.engine = engine;
+        this.lines = lines;
+        this.fromLine = fromLine;
+        this.toLine = toLine;
+    }
+
+    /** Start searching on a new thread. */
+    public SearchJob start() {
+        thread = new Thread(this,"search");
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    @Override
+    public void run() {
+        final long start = System.nanoTime();
+        try {
+            for(int from = fromLine; from < toLine && !cancelled; from += BLOCK_LINES) {
+                final int to = (int)Math.min((long)from+BLOCK_LINES,toLine);
+                IntList blockHits = engine.search(lines,from,to);
+                synchronized(this) {
+                    hits.addAll(blockHits);
+                    hitCount += blockHits.size();
+                }
+                linesScanned = to-fromLine;
+            }
+        } catch(Throwable e) {
+            error = e;      //a line that couldn't be read, or a regex that ran out of stack on a long line
+        } finally {
+            elapsedNanos = System.nanoTime()-start;
+            done = true;
+        }
+    }
+
+    /** Returns the hits found since the last call, in line order. */
+    public synchronized IntList takeHits() {
+        IntList taken = new IntList(hits.size());
+        taken.addAll(hits);
+        hits.clear();
+        return taken;
+    }
+
+    /** Stop searching, and wait for the search thread to finish up. */
+    public void cancel() {
+        cancelled = true;
+        join();
+    }
+
+    /** Wait for the search to finish. */
+    public void join() {
+        if(thread != null) {
+            try {
+                thread.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** What stopped the search before it was done, or null if nothing went wrong. */
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** True once the job stopped, either because it searched everything or was cancelled. */
+    public boolean isDone() {
+        return done;
+    }
+
+    public int getLinesScanned() {
+        return linesScanned;
+    }
+
+    public int getTotalLines() {
+        return toLine-fromLine;
+    }
+
+    /** How long the search ran, once it's done. */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /** Total hits found so far, including ones already taken. */
+    public int getHitCount() {
+        return hitCount;
+    }
+}
@@ -0,0 +1,71 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+/**
+ * The low level console calls the viewer needs. The real one is NCursesConsole, which talks to the terminal
+ * through NConsole. HeadlessTerminal keeps everything in memory so the viewer can run without a terminal.
+ *
+ * Coordinates are x,y starting at 0,0 in the top left. Colors are the curses color numbers.
+ */
+public interface Terminal {
+    int COLOR_BLACK = 0;
+    int COLOR_RED = 1;
+    int COLOR_GREEN = 2;
+    int COLOR_YELLOW = 3;
+    int COLOR_BLUE = 4;
+    int COLOR_MAGENTA = 5;
+    int COLOR_CYAN = 6;
+    int COLOR_WHITE = 7;
+
+    /** Value getch() returns when no key was pressed before the timeout. */
+    int ERR = -1;
+
+    int initscr();
+
+    int endwin();
+
+    int initPair(int pair,int foreground,int background);
+
+    /**
+     * How long getch() waits for a key.
+     *
+     * @param delay milliseconds to wait, or -1 to wait until a key is pressed.
+     */
+    int timeout(int delay);
+
+    int getch();
+
+    /** Checks the terminal size, returns true if it changed since last time. */
+    boolean updateSize();
+
+    int getWidth();
+
+    int getHeight();
+
+    int move(int x,int y);
+
+    int attron(int pair);
+
+    int attroff(int pair);
+
+    int printw(String text);
+
+    int clear();
+
+    int refresh();
+}
@@ -0,0 +1,142 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.util.Arrays;
+
+/**
+ * The timestamp of every line that starts with one, kept in primitive arrays in line order. Finding the first line
+ * at or after a time is a binary search. Building it means reading every line, so it's optional; without it
+ * bisect() finds a time by reading only a few dozen lines of the file.
+ *
+ * Both assume the log was written in time order.
+ */
+public class TimestampIndex {
+    /** How far bisect() looks for a line with a timestamp, past lines like stack traces that don't have one. */
+    private static final int MAX_SCAN = 1000;
+
+    private final IntList lines = new IntList();
+    private long[] times = new long[16];
+
+    /**
+     * Indexes lines fromLine up to but not including toLine. Anything already indexed from fromLine on is replaced,
+     * which is needed when the last line of the file was only partly written last time.
+     */
+    public void update(LineSource source,int fromLine,int toLine) {
+        int keep = lines.binarySearch(fromLine);
+        lines.truncate(keep >= 0 ? keep : -keep-1);
+        for(int i = fromLine; i < toLine; i++) {
+            final long time = Timestamps.parse(source.getLine(i));
+            if(time != Timestamps.NO_TIME) {
+                if(lines.size() == times.length) {
+                    times = Arrays.copyOf(times,times.length*2);
+                }
+                times[lines.size()] = time;
+                lines.add(i);
+            }
+        }
+    }
+
+    /** Number of lines with a timestamp. */
+    public int size() {
+        return lines.size();
+    }
+
+    /** The first line with a timestamp at or after time, or -1 if there isn't one. */
+    public int find(long time) {
+        int k = Arrays.binarySearch(times,0,lines.size(),time);
+        if(k < 0) {
+            k = -k-1;
+        } else {
+            while(k > 0 && times[k-1] == time) {
+                k--;    //binarySearch finds any of them, we want the first
+            }
+        }
+        return k < lines.size() ? lines.get(k) : -1;
+    }
+
+    /**
+     * Finds the first line at or after time without an index, by bisecting the lines of the file. Only the lines
+     * that are probed get read. A probe that lands in a long run of lines without a time looks at the line with a
+     * time before it to tell which half to carry on with, and if there isn't one close by either, reads on until it
+     * finds one.
+     *
+     * @return the line, or -1 if every timestamp is before time.
+     */
+    public static int bisect(LineSource source,long time) {
+        int low = 0;
+        int high = source.lineCount();
+        int found = -1;
+        while(low < high) {
+            final int middle = (low+high)>>>1;
+            int timedLine = nextTimedLine(source,middle,Math.min(high,middle+MAX_SCAN));
+            if(timedLine == -1) {
+                final int before = prevTimedLine(source,middle-1,Math.max(low,middle-MAX_SCAN));
+                if(before != -1) {
+                    if(Timestamps.parse(source.getLine(before)) < time) {
+                        low = Math.min(high,middle+MAX_SCAN);   //the lines looked at are all too early
+                    } else {
+                        high = middle;
+                    }
+                    continue;
+                }
+                timedLine = nextTimedLine(source,Math.min(high,middle+MAX_SCAN),high);
+            }
+            if(timedLine == -1) {
+                high = middle;  //nothing with a time from the middle on, so look before it
+            } else if(Timestamps.parse(source.getLine(timedLine)) < time) {
+                low = timedLine+1;
+            } else {
+                found = timedLine;
+                high = middle;
+            }
+        }
+        return found;
+    }
+
+    /** The first line from fromLine on, before toLine, that has a timestamp, or -1 if there isn't one. */
+    private static int nextTimedLine(LineSource source,int fromLine,int toLine) {
+        for(int i = fromLine; i < toLine; i++) {
+            if(Timestamps.parse(source.getLine(i)) != Timestamps.NO_TIME) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** The last line from fromLine back to toLine that has a timestamp, or -1 if there isn't one. */
+    private static int prevTimedLine(LineSource source,int fromLine,int toLine) {
+        for(int i = fromLine; i >= toLine; i--) {
+            if(Timestamps.parse(source.getLine(i)) != Timestamps.NO_TIME) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** The timestamp of the closest line at or after lineNum that has one, or NO_TIME if there isn't one close by. */
+    public static long timeAtOrAfter(LineSource source,int lineNum) {
+        final int timedLine = nextTimedLine(source,lineNum,Math.min(source.lineCount(),lineNum+MAX_SCAN));
+        return timedLine == -1 ? Timestamps.NO_TIME : Timestamps.parse(source.getLine(timedLine));
+    }
+
+    /** The closest line at or before lineNum with a timestamp, or NO_TIME if there isn't one close by. */
+    public static long timeAtOrBefore(LineSource source,int lineNum) {
+        final int timedLine = prevTimedLine(source,lineNum,Math.max(0,lineNum-MAX_SCAN+1));
+        return timedLine == -1 ? Timestamps.NO_TIME : Timestamps.parse(source.getLine(timedLine));
+    }
+}
@@ -0,0 +1,139 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+/**
+ * Reads the timestamp at the start of a log line, in the form "yyyy-MM-dd HH:mm:ss.S" that the makefile option
+ * writes. Like the log entry pattern, the date separators can be any character, so "2018/12/24" works too. The
+ * fraction is optional.
+ *
+ * Rather then milliseconds since 1970, a timestamp is turned into a number that reads like the timestamp, for
+ * example 2018-12-24 14:32:05.250 is 20181224143205250. These sort the same as the times they came from, don't
+ * depend on the time zone, and are quick to make without allocating anything.
+ */
+public final class Timestamps {
+    /** Returned when there isn't a timestamp. */
+    public static final long NO_TIME = -1;
+
+    private Timestamps() {
+    }
+
+    /**
+     * Reads the timestamp at the start of the line.
+     *
+     * @return the timestamp, or NO_TIME if the line doesn't start with one.
+     */
+    public static long parse(CharSequence line) {
+        //yyyy-MM-dd HH:mm:ss is 19 characters
+        if(line.length() < 19 || line.charAt(10) != ' ') {
+            return NO_TIME;
+        }
+        final long date = parseDate(line,0);
+        final long time = parseTime(line,11);
+        if(date == NO_TIME || time == NO_TIME) {
+            return NO_TIME;
+        }
+        return date*1000000000L+time;
+    }
+
+    /**
+     * Reads a time the user typed in, which is a full timestamp, or just "HH:mm" or "HH:mm:ss". When there is no
+     * date, the date of the reference timestamp is used.
+     *
+     * @param input What the user typed.
+     * @param reference Timestamp to take the date from, can be NO_TIME if input has a date.
+     * @return the timestamp, or NO_TIME if it couldn't be read.
+     */
+    public static long parseInput(String input,long reference) {
+        input = input.trim();
+        if(input.length() >= 10 && parseDate(input,0) != NO_TIME) {
+            if(input.length() == 10) {
+                return parseDate(input,0)*1000000000L;
+            }
+            return parse(input.length() == 16 ? input+":00" : input);
+        }
+        if(reference == NO_TIME) {
+            return NO_TIME;
+        }
+        final long time = parseTime(input.length() == 5 ? input+":00" : input,0);
+        if(time == NO_TIME) {
+            return NO_TIME;
+        }
+        return reference/1000000000L*1000000000L+time;
+    }
+
+    /** Shows the timestamp the way it appears in the log, for messages. */
+    public static String format(long timestamp) {
+        final String digits = Long.toString(timestamp);
+        if(digits.length() != 17) {
+            return digits;
+        }
+        return digits.substring(0,4)+"-"+digits.substring(4,6)+"-"+digits.substring(6,8)+" "
+                +digits.substring(8,10)+":"+digits.substring(10,12)+":"+digits.substring(12,14)+"."+digits.substring(14);
+    }
+
+    /** Reads yyyy?MM?dd at offset, returns yyyyMMdd or NO_TIME. */
+    private static long parseDate(CharSequence s,int offset) {
+        final int year = digits(s,offset,4);
+        final int month = digits(s,offset+5,2);
+        final int day = digits(s,offset+8,2);
+        if(year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return NO_TIME;
+        }
+        return (year*100L+month)*100+day;
+    }
+
+    /**
+     * Reads HH:mm:ss with an optional fraction at offset, returns HHmmssSSS or NO_TIME. The fraction is milliseconds
+     * like SimpleDateFormat's "S", so ".5" is 5ms. Digits after the third are ignored.
+     */
+    private static long parseTime(CharSequence s,int offset) {
+        if(s.length() < offset+8 || s.charAt(offset+2) != ':' || s.charAt(offset+5) != ':') {
+            return NO_TIME;
+        }
+        final int hour = digits(s,offset,2);
+        final int minute = digits(s,offset+3,2);
+        final int second = digits(s,offset+6,2);
+        if(hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return NO_TIME;
+        }
+        int millis = 0;
+        int i = offset+8;
+        if(i < s.length() && (s.charAt(i) == '.' || s.charAt(i) == ',')) {
+            for(i++; i < s.length() && i <= offset+11 && Character.isDigit(s.charAt(i)); i++) {
+                millis = millis*10+s.charAt(i)-'0';
+            }
+        }
+        return ((hour*100L+minute)*100+second)*1000+millis;
+    }
+
+    /** Reads count digits at offset, returns -1 if they aren't all digits. */
+    private static int digits(CharSequence s,int offset,int count) {
+        if(s.length() < offset+count) {
+            return -1;
+        }
+        int value = 0;
+        for(int i = offset; i < offset+count; i++) {
+            final char ch = s.charAt(i);
+            if(ch < '0' || ch > '9') {
+                return -1;
+            }
+            value = value*10+ch-'0';
+        }
+        return value;
+    }
+}
@@ -0,0 +1,108 @@
+/* *****************************************************************************
+ * Copyright 2018 Lee Patterson <https://github.com/abathur8bit>
+ *
+ * You may use and modify at will. Please credit me in the source.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ******************************************************************************/
+
+import java.util.function.IntFunction;
+
+/**
+ * Splits lines into screen rows for word wrap. A row is broken after the last space that fits, or in the middle of
+ * a word that is longer then a whole row. Tabs count as TAB_SIZE columns and control characters as 2, the most the
+ * screen draws them as, so a row never runs past the edge.
+ *
+ * Rows are only worked out for the lines that are asked for, which are the ones on or near the screen, and the last
+ * CAPACITY of them are remembered. Nothing is done for the whole file, so a huge file costs the same as a small one.
+ * The width is fixed. When the screen changes size, a new index is made, which is free until lines are asked for.
+ */
+public class WrapIndex {
+    private static final int CAPACITY = 4096;
+    private static final int TAB_SIZE = 8;
+    private static final int[] ONE_ROW = {0};
+
+    private final IntFunction<String> lines;
+    private final int width;
+    private final LruCache<int[]> rows = new LruCache<>(CAPACITY);
+
+    /**
+     * @param lines Gets the text of a line, by its line number.
+     * @param width Number of columns in a row.
+     */
+    public WrapIndex(IntFunction<String> lines,int width) {
+        this.lines = lines;
+        this.width = Math.max(1,width);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /** Number of rows the line takes up. */
+    public int rowCount(int lineNum) {
+        return rowStarts(lineNum).length;
+    }
+
+    /** Where each row of the line starts. The first is always 0. Don't change the array, it's shared. */
+    public int[] rowStarts(int lineNum) {
+        int[] starts = rows.get(lineNum);
+        if(starts == null) {
+            starts = wrap(lines.apply(lineNum),width);
+            rows.put(lineNum,starts);
+        }
+        return starts;
+    }
+
+    /** Forgets the lines from fromLine on, because they changed. */
+    public void forget(int fromLine) {
+        rows.forget(fromLine);
+    }
+
+    /** Where each row of the line starts, when the rows are width columns wide. */
+    static int[] wrap(String line,int width) {
+        IntList starts = null;
+        int rowStart = 0;
+        int column = 0;
+        int afterSpace = -1;    //where the row could break, just after the last space in it
+        for(int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            final int columns = columns(c);
+            if(column+columns > width && i > rowStart) {
+                if(starts == null) {
+                    starts = new IntList();
+                    starts.add(0);
+                }
+                rowStart = afterSpace > rowStart ? afterSpace : i;
+                starts.add(rowStart);
+                column = 0;
+                for(int j = rowStart; j < i; j++) {
+                    column += columns(line.charAt(j));  //the start of the word carried over
+                }
+                afterSpace = -1;
+            }
+            column += columns;
+            if(c == ' ') {
+                afterSpace = i+1;
+            }
+        }
+        return starts == null ? ONE_ROW : starts.toArray();
+    }
+
+    private static int columns(char c) {
+        if(c == '\t') {
+            return TAB_SIZE;
+        }
+        return c < ' ' ? 2 : 1;
+    }
+}
@@ -0,0 +1,63 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockIndexTest {
+    private static final String LOG =
+            "started\n"+                            //0 before the first entry
+            "2018-12-24 10:00:00.0 one\n"+          //1
+            "2018/12/24 10:00:01.0 two\n"+          //2
+            "java.lang.Exception\n"+                //3
+            "\tat Foo.bar(Foo.java:1)\n"+           //4
+            "2018-12-24 10:00:02.0 three\n";        //5
+
+    private MappedLineSource makeLines(String contents) throws IOException {
+        File f = File.createTempFile("garfield",".log");
+        f.deleteOnExit();
+        try(FileOutputStream out = new FileOutputStream(f)) {
+            out.write(contents.getBytes(StandardCharsets.UTF_8));
+        }
+        return new MappedLineSource(f,StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void starts() throws IOException {
+        try(MappedLineSource lines = makeLines(LOG)) {
+            BlockIndex index = new BlockIndex(BlockIndex.DEFAULT_START_PATTERN);
+            index.update(lines,0,lines.lineCount());
+            assertEquals(4,index.size());
+            assertEquals(0,index.get(0));
+            assertEquals(1,index.get(1));
+            assertEquals(2,index.get(2));
+            assertEquals(5,index.get(3));
+        }
+    }
+
+    @Test
+    void entryOfLine() throws IOException {
+        try(MappedLineSource lines = makeLines(LOG)) {
+            BlockIndex index = new BlockIndex(BlockIndex.DEFAULT_START_PATTERN);
+            index.update(lines,0,lines.lineCount());
+            assertEquals(2,index.indexOf(4));       //stack trace belongs to "two"
+            assertEquals(3,index.lineCount(2,lines.lineCount()));
+            assertEquals(1,index.lineCount(3,lines.lineCount()));
+            assertEquals(5,index.next(3));
+            assertEquals(2,index.prev(4));
+            assertEquals(-1,index.next(5));
+        }
+    }
+
+    @Test
+    void empty() throws IOException {
+        try(MappedLineSource lines = makeLines("")) {
+            BlockIndex index = new BlockIndex(BlockIndex.DEFAULT_START_PATTERN);
+            index.update(lines,0,0);
+            assertEquals(0,index.size());
+        }
+    }
+}
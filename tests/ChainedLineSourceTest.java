@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChainedLineSourceTest {
+
+    private File makeFile(String contents) throws IOException {
+        File f = File.createTempFile("garfield",".log");
+        f.deleteOnExit();
+        append(f,contents);
+        return f;
+    }
+
+    private void append(File f,String contents) throws IOException {
+        try(FileOutputStream out = new FileOutputStream(f,true)) {
+            out.write(contents.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private MappedLineSource open(File f) throws IOException {
+        return new MappedLineSource(f,StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void lines() throws IOException {
+        try(ChainedLineSource src = new ChainedLineSource(open(makeFile("one\ntwo\n")))) {
+            src.add(open(makeFile("three\n")));
+            assertEquals(3,src.lineCount());
+            assertEquals("one",src.getLine(0));
+            assertEquals("two",src.getLine(1));
+            assertEquals("three",src.getLine(2));
+            assertEquals(5,src.maxLineLength());
+            assertEquals(14,src.sizeBytes());
+            assertThrows(IndexOutOfBoundsException.class,() -> src.getLine(3));
+        }
+    }
+
+    /** A file rotated before anything was written to it doesn't take up any lines. */
+    @Test
+    void emptyPart() throws IOException {
+        try(ChainedLineSource src = new ChainedLineSource(open(makeFile("one\n")))) {
+            src.add(open(makeFile("")));
+            src.add(open(makeFile("two\n")));
+            assertEquals(2,src.lineCount());
+            assertEquals("one",src.getLine(0));
+            assertEquals("two",src.getLine(1));
+        }
+    }
+
+    /** Only the last file is updated. */
+    @Test
+    void update() throws IOException {
+        File first = makeFile("one\n");
+        File second = makeFile("two\n");
+        try(ChainedLineSource src = new ChainedLineSource(open(first))) {
+            src.add(open(second));
+            append(first,"lost\n");
+            assertFalse(src.update());
+            append(second,"three\n");
+            assertTrue(src.update());
+            assertEquals(3,src.lineCount());
+            assertEquals("three",src.getLine(2));
+        }
+    }
+}
@@ -0,0 +1,33 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiagnosticsTest {
+
+    @Test
+    void units() {
+        assertEquals("512B",Diagnostics.bytes(512));
+        assertEquals("1.5KB",Diagnostics.bytes(1536));
+        assertEquals("48.0MB",Diagnostics.bytes(48L<<20));
+        assertEquals("999",Diagnostics.count(999));
+        assertEquals("12.3M",Diagnostics.count(12300000));
+        assertEquals("1.2ms",Diagnostics.millis(1200000));
+        assertEquals("840ms",Diagnostics.millis(840000000));
+    }
+
+    @Test
+    void summary() {
+        Diagnostics diagnostics = new Diagnostics();
+        diagnostics.frame(1200000,38);
+        diagnostics.load(500000000,256L<<20,false,8<<20,1024);
+        diagnostics.search(2000000000,24600000,10);
+        assertEquals("Frame 1.2ms 38 calls | Load 500ms 512.0MB/s | Search 12.3M lines/s | Heap lines 8.0MB flags 1.0KB",
+                diagnostics.summary(8<<20,1024));
+    }
+
+    /** Without a recording, or without Flight Recorder at all, events are just dropped. */
+    @Test
+    void noRecording() {
+        new FlightEvent("garfield.Test","Test","value","Value",FlightEvent.COUNT).commit(1);
+    }
+}
@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileWatcherTest {
+    private static final long WAIT_MS = 5000;
+
+    private void append(File f,String contents) throws IOException {
+        try(FileOutputStream out = new FileOutputStream(f,true)) {
+            out.write(contents.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Waits for the watcher to see a change, false if it never did. */
+    private boolean waitForChange(FileWatcher watcher) throws InterruptedException {
+        final long end = System.currentTimeMillis()+WAIT_MS;
+        while(System.currentTimeMillis() < end) {
+            if(watcher.takeChanged()) {
+                return true;
+            }
+            Thread.sleep(5);
+        }
+        return false;
+    }
+
+    @Test
+    void append() throws IOException, InterruptedException {
+        File f = File.createTempFile("garfield",".log");
+        f.deleteOnExit();
+        try(FileWatcher watcher = new FileWatcher(f)) {
+            assertTrue(watcher.isWatching());
+            assertFalse(watcher.takeChanged());
+            append(f,"one\n");
+            assertTrue(waitForChange(watcher));
+            assertFalse(watcher.takeChanged());     //taking it resets the flag
+        }
+    }
+
+    @Test
+    void otherFilesIgnored() throws IOException, InterruptedException {
+        File f = File.createTempFile("garfield",".log");
+        File other = File.createTempFile("garfield",".log");
+        f.deleteOnExit();
+        other.deleteOnExit();
+        try(FileWatcher watcher = new FileWatcher(f)) {
+            append(other,"one\n");
+            Thread.sleep(200);
+            assertFalse(watcher.takeChanged());
+        }
+    }
+
+    @Test
+    void close() throws IOException {
+        File f = File.createTempFile("garfield",".log");
+        f.deleteOnExit();
+        FileWatcher watcher = new FileWatcher(f);
+        watcher.close();
+        assertFalse(watcher.isWatching());
+    }
+}
@@ -0,0 +1,125 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GzipLineSourceTest {
+
+    /** Writes each string as its own gzip member, the way appending to a .gz file does. */
+    private File makeFile(String... members) throws IOException {
+        File f = File.createTempFile("garfield",".log.gz");
+        f.deleteOnExit();
+        try(FileOutputStream out = new FileOutputStream(f)) {
+            for(String member : members) {
+                GZIPOutputStream gzip = new GZIPOutputStream(out);
+                gzip.write(member.getBytes(StandardCharsets.UTF_8));
+                gzip.finish();
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Flushes every flushBytes, the way pigz and zlib's Z_SYNC_FLUSH do. Each flush is an empty stored block, which
+     * is padded to a byte boundary wherever it happens to start.
+     */
+    private File makeFlushedFile(String contents,int flushBytes) throws IOException {
+        File f = File.createTempFile("garfield",".log.gz");
+        f.deleteOnExit();
+        final byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+        try(GZIPOutputStream gzip = new GZIPOutputStream(new FileOutputStream(f),true)) {
+            for(int i = 0; i < bytes.length; i += flushBytes) {
+                gzip.write(bytes,i,Math.min(flushBytes,bytes.length-i));
+                gzip.flush();
+            }
+        }
+        return f;
+    }
+
+    private GzipLineSource open(File f,File indexFolder) throws IOException {
+        return new GzipLineSource(f,StandardCharsets.UTF_8,indexFolder);
+    }
+
+    /** Enough lines to need several checkpoints. */
+    private List<String> bigLog() {
+        List<String> lines = new ArrayList<>();
+        for(int i = 0; i < 200000; i++) {
+            lines.add("2018-12-24 14:32:05.250 INFO line "+i+" of the log "+(i*7919%1000003));
+        }
+        return lines;
+    }
+
+    @Test
+    void lines() throws IOException {
+        try(GzipLineSource src = open(makeFile("one\r\ntwo\n\nfour"),null)) {
+            assertEquals(4,src.lineCount());
+            assertEquals("one",src.getLine(0));
+            assertEquals("two",src.getLine(1));
+            assertEquals("",src.getLine(2));
+            assertEquals("four",src.getLine(3));
+            assertEquals(4,src.maxLineLength());
+            assertFalse(src.update());
+            assertThrows(IndexOutOfBoundsException.class,() -> src.getLine(4));
+        }
+    }
+
+    @Test
+    void members() throws IOException {
+        try(GzipLineSource src = open(makeFile("one\n","","two\nthree\n"),null)) {
+            assertEquals(3,src.lineCount());
+            assertEquals("one",src.getLine(0));
+            assertEquals("two",src.getLine(1));
+            assertEquals("three",src.getLine(2));
+        }
+    }
+
+    @Test
+    void notGzip() throws IOException {
+        File f = File.createTempFile("garfield",".log");
+        f.deleteOnExit();
+        assertFalse(GzipLineSource.isGzip(f));
+        assertThrows(IOException.class,() -> open(f,null));
+        assertTrue(GzipLineSource.isGzip(makeFile("one\n")));
+    }
+
+    /** Lines are read from the checkpoints, in any order. The second open uses the saved checkpoints. */
+    @Test
+    void checkpoints() throws IOException {
+        final List<String> lines = bigLog();
+        final File f = makeFile(String.join("\n",lines));
+        final File indexFolder = Files.createTempDirectory("garfield").toFile();
+        indexFolder.deleteOnExit();
+        for(int open = 0; open < 2; open++) {
+            try(GzipLineSource src = open(f,indexFolder)) {
+                assertEquals(lines.size(),src.lineCount());
+                for(int i = lines.size()-1; i >= 0; i -= 997) {
+                    assertEquals(lines.get(i),src.getLine(i));
+                }
+            }
+            final File[] saved = indexFolder.listFiles();
+            assertNotNull(saved);
+            assertEquals(1,saved.length);
+            saved[0].deleteOnExit();
+        }
+    }
+
+    /** Checkpoints that aren't on a byte boundary, followed by stored blocks. */
+    @Test
+    void flushed() throws IOException {
+        final List<String> lines = bigLog();
+        try(GzipLineSource src = open(makeFlushedFile(String.join("\n",lines),1<<17),null)) {
+            assertEquals(lines.size(),src.lineCount());
+            for(int i = lines.size()-1; i >= 0; i -= 997) {
+                assertEquals(lines.get(i),src.getLine(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexCacheTest {
+    private final IndexCache cache;
+
+    IndexCacheTest() throws IOException {
+        File folder = Files.createTempDirectory("garfield").toFile();
+        folder.deleteOnExit();
+        cache = new IndexCache(folder);
+    }
+
+    private File makeFile(String contents) throws IOException {
+        File f = File.createTempFile("garfield",".log");
+        f.deleteOnExit();
+        append(f,contents);
+        return f;
+    }
+
+    private void append(File f,String contents) throws IOException {
+        try(FileOutputStream out = new FileOutputStream(f,true)) {
+            out.write(contents.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private MappedLineSource open(File f) throws IOException {
+        MappedLineSource src = cache.open(f,StandardCharsets.UTF_8);
+        cache.fileFor(f,".idx").deleteOnExit();
+        return src;
+    }
+
+    @Test
+    void reopen() throws IOException {
+        File f = makeFile("one\ntwo\n"+new String(new char[300]).replace('\0','x')+"\nfour");
+        try(MappedLineSource src = open(f)) {
+            assertEquals(4,src.lineCount());
+        }
+        assertTrue(cache.fileFor(f,".idx").isFile());
+        try(MappedLineSource src = open(f)) {
+            assertEquals(4,src.lineCount());
+            assertEquals("two",src.getLine(1));
+            assertEquals(300,src.getLine(2).length());
+            assertEquals("four",src.getLine(3));
+            assertEquals(300,src.maxLineLength());
+        }
+    }
+
+    /** Appended to since it was saved, only the new part needs scanning. */
+    @Test
+    void appended() throws IOException {
+        File f = makeFile("one\ntw");
+        open(f).close();
+        append(f,"o\nthree\n");
+        try(MappedLineSource src = open(f)) {
+            assertEquals(3,src.lineCount());
+            assertEquals("two",src.getLine(1));
+            assertEquals("three",src.getLine(2));
+        }
+    }
+
+    /** Same size, but different contents, so the index is no good. */
+    @Test
+    void replaced() throws IOException {
+        File f = makeFile("one\ntwo\n");
+        open(f).close();
+        Files.write(f.toPath(),"o\nne\ntwo".getBytes(StandardCharsets.UTF_8));
+        try(MappedLineSource src = open(f)) {
+            assertEquals(3,src.lineCount());
+            assertEquals("ne",src.getLine(1));
+        }
+    }
+
+    @Test
+    void marks() throws IOException {
+        File f = makeFile("one\ntwo\nthree\n");
+        IntList marks = new IntList();
+        marks.add(0);
+        marks.add(2);
+        cache.saveMarks(f,f.length(),marks);
+        cache.fileFor(f,".marks").deleteOnExit();
+        append(f,"four\n");
+        IntList read = cache.readMarks(f);
+        assertEquals(2,read.size());
+        assertEquals(2,read.get(1));
+
+        Files.write(f.toPath(),"different\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(cache.readMarks(f).isEmpty());
+
+        cache.saveMarks(f,f.length(),new IntList());
+        assertFalse(cache.fileFor(f,".marks").exists());
+    }
+}
@@ -0,0 +1,132 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestJobTest {
+    private static final long WAIT_MS = 5000;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    private File makeFile() throws IOException {
+        File f = File.createTempFile("garfield",".log");
+        f.deleteOnExit();
+        return f;
+    }
+
+    private void append(File f,byte[] bytes) throws IOException {
+        try(FileOutputStream out = new FileOutputStream(f,true)) {
+            out.write(bytes);
+        }
+    }
+
+    /** Waits until the job has read something, null if it never did. */
+    private IngestJob.Step waitForStep(IngestJob job) throws IOException, InterruptedException {
+        final long end = System.currentTimeMillis()+WAIT_MS;
+        while(System.currentTimeMillis() < end) {
+            lock.lock();
+            try {
+                IngestJob.Step step = job.take();
+                if(step != null) {
+                    return step;
+                }
+            } finally {
+                lock.unlock();
+            }
+            Thread.sleep(5);
+        }
+        return null;
+    }
+
+    @Test
+    void append() throws IOException, InterruptedException {
+        File f = makeFile();
+        try(MappedLineSource lines = new MappedLineSource(f,StandardCharsets.UTF_8)) {
+            IngestJob job = new IngestJob(lines,lock,null,f).start();
+            try {
+                append(f,"one\ntwo\n".getBytes(StandardCharsets.UTF_8));
+                IngestJob.Step step = waitForStep(job);
+                assertNotNull(step);
+                assertEquals(8,step.bytes);
+                assertEquals(2,lines.lineCount());
+                assertEquals("two",lines.getLine(1));
+            } finally {
+                job.stop();
+            }
+        }
+    }
+
+    /**
+     * A lot more then the buffer holds is read a step at a time, and only while the lock is free. Reading stops when
+     * the buffer is full, until the steps are taken.
+     */
+    @Test
+    void bounded() throws IOException, InterruptedException {
+        File f = makeFile();
+        final byte[] line = new byte[1024];
+        Arrays.fill(line,(byte)'x');
+        line[line.length-1] = '\n';
+        final int lineCount = (int)(IngestJob.STEP_BYTES*(IngestJob.BUFFER_STEPS+2)/line.length);
+        try(MappedLineSource lines = new MappedLineSource(f,StandardCharsets.UTF_8)) {
+            IngestJob job = new IngestJob(lines,lock,null,f);
+            lock.lock();
+            try {
+                job.start();
+                try(FileOutputStream out = new FileOutputStream(f,true)) {
+                    for(int i = 0; i < lineCount; i++) {
+                        out.write(line);
+                    }
+                }
+                Thread.sleep(300);
+                assertEquals(0,lines.sizeBytes());  //not while we have the lock
+            } finally {
+                lock.unlock();
+            }
+            Thread.sleep(300);
+            assertEquals(IngestJob.STEP_BYTES*IngestJob.BUFFER_STEPS,lines.sizeBytes());
+            assertEquals(f.length(),job.getDiskBytes());
+
+            long total = 0;
+            while(total < f.length()) {
+                IngestJob.Step step = waitForStep(job);
+                assertNotNull(step);
+                assertTrue(step.bytes <= IngestJob.STEP_BYTES*IngestJob.BUFFER_STEPS);
+                total += step.bytes;
+            }
+            job.stop();
+            assertEquals(f.length(),total);
+            assertEquals(lineCount,lines.lineCount());
+        }
+    }
+
+    /** Nothing new to read after the file changed means it was truncated or replaced. */
+    @Test
+    void stale() throws IOException, InterruptedException {
+        File f = makeFile();
+        append(f,"one\ntwo\n".getBytes(StandardCharsets.UTF_8));
+        try(MappedLineSource lines = new MappedLineSource(f,StandardCharsets.UTF_8)) {
+            IngestJob job = new IngestJob(lines,lock,null,f).start();
+            try {
+                try(RandomAccessFile raf = new RandomAccessFile(f,"rw")) {
+                    raf.setLength(4);
+                }
+                final long end = System.currentTimeMillis()+WAIT_MS;
+                while(!job.takeStale() && System.currentTimeMillis() < end) {
+                    Thread.sleep(5);
+                }
+                assertTrue(System.currentTimeMillis() < end);
+                assertEquals(4,job.getDiskBytes());
+                assertEquals(2,lines.lineCount());
+            } finally {
+                job.stop();
+            }
+        }
+    }
+}
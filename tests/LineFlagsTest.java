@@ -105,4 +105,48 @@ class LineFlagsTest {
         LineFlags lf = new LineFlags();
         assertEquals(0,lf.get(99)); //nothing exists
     }
+
+    /** Lines that no longer have any bits set aren't counted. */
+    @Test
+    void resetRemoves() {
+        LineFlags lf = new LineFlags();
+        lf.set(1,1);
+        lf.set(2,3);
+        lf.reset(1,1);
+        assertEquals(1,lf.size());
+        lf.reset(1);
+        assertEquals(1,lf.size());
+        lf.reset(2);
+        assertEquals(0,lf.size());
+    }
+
+    @Test
+    void nextSetLine() {
+        LineFlags lf = new LineFlags();
+        lf.set(3,2);
+        lf.set(10,6);
+        lf.set(70000,2);
+        assertEquals(3,lf.nextSetLine(0,2));
+        assertEquals(3,lf.nextSetLine(3,2));
+        assertEquals(10,lf.nextSetLine(4,2));
+        assertEquals(70000,lf.nextSetLine(11,2));
+        assertEquals(-1,lf.nextSetLine(70001,2));
+        assertEquals(10,lf.nextSetLine(0,4));
+        assertEquals(10,lf.nextSetLine(0,6));   //all bits need to be set
+        assertEquals(-1,lf.nextSetLine(0,8));   //never used
+        assertEquals(3,lf.nextSetLine(0,0));    //any flag
+    }
+
+    @Test
+    void prevSetLine() {
+        LineFlags lf = new LineFlags();
+        lf.set(3,2);
+        lf.set(10,6);
+        assertEquals(10,lf.prevSetLine(99,2));
+        assertEquals(10,lf.prevSetLine(10,2));
+        assertEquals(3,lf.prevSetLine(9,2));
+        assertEquals(-1,lf.prevSetLine(2,2));
+        assertEquals(-1,lf.prevSetLine(9,4));
+        assertEquals(-1,lf.prevSetLine(-1,2));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiteralMatcherTest {
+    private static final String[] LINES = {
+            "2018-12-12 ERROR Connection refused",
+            "",
+            "  at Foo.bar(Foo.java:12)\r",
+            "\u00e9t\u00e9 CAF\u00c9 caf\u00e9",
+            "\u212a sign",
+            "error error",
+            "no match here",
+    };
+
+    private MappedLineSource makeLines() throws IOException {
+        File f = File.createTempFile("garfield",".log");
+        f.deleteOnExit();
+        try(FileOutputStream out = new FileOutputStream(f)) {
+            out.write(String.join("\n",LINES).getBytes(StandardCharsets.UTF_8));
+        }
+        return new MappedLineSource(f,StandardCharsets.UTF_8);
+    }
+
+    /** Searching the bytes has to find the same lines as checking each String. */
+    private void assertFinds(String query,boolean ignoreCase,int... expected) throws IOException {
+        final LiteralMatcher literal = new LiteralMatcher(query,ignoreCase);
+        IntList byLine = new IntList();
+        for(int i = 0; i < LINES.length; i++) {
+            if(literal.matches(LINES[i].replace("\r",""))) {
+                byLine.add(i);
+            }
+        }
+        assertArrayEquals(expected,byLine.toArray(),query);
+        try(MappedLineSource lines = makeLines()) {
+            assertArrayEquals(expected,lines.find(literal,0,lines.lineCount()).toArray(),query);
+        }
+    }
+
+    @Test
+    void caseSensitive() throws IOException {
+        assertFinds("ERROR",false,0);
+        assertFinds("error",false,5);
+        assertFinds("caf\u00e9",false,3);
+        assertFinds("Foo.java:12)",false,2);
+        assertFinds("missing",false);
+    }
+
+    @Test
+    void ignoreCase() throws IOException {
+        assertFinds("error",true,0,5);
+        assertFinds("CONNECTION",true,0);
+        assertFinds("caf\u00e9",true,3);
+        assertFinds("CAF\u00c9",true,3);
+        assertFinds("K",true);      //the Kelvin sign is not a k
+    }
+
+    @Test
+    void bytesOnlyWhenSafe() {
+        assertTrue (new LiteralMatcher("error",true).canSearchBytes(StandardCharsets.UTF_8));
+        assertTrue (new LiteralMatcher("error",true).canSearchBytes(StandardCharsets.ISO_8859_1));
+        assertTrue (new LiteralMatcher("caf\u00e9",false).canSearchBytes(StandardCharsets.UTF_8));
+        assertFalse(new LiteralMatcher("caf\u00e9",false).canSearchBytes(StandardCharsets.ISO_8859_1));
+        assertFalse(new LiteralMatcher("caf\u00e9",true).canSearchBytes(StandardCharsets.UTF_8));
+        assertFalse(new LiteralMatcher("a\nb",false).canSearchBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void fromLine() throws IOException {
+        try(MappedLineSource lines = makeLines()) {
+            final LiteralMatcher literal = new LiteralMatcher("error",true);
+            assertArrayEquals(new int[] {5},lines.find(literal,1,lines.lineCount()).toArray());
+            assertArrayEquals(new int[] {0},lines.find(literal,0,5).toArray());
+        }
+    }
+}
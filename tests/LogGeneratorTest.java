@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogGeneratorTest {
+
+    private static String make(long seed,int lines) throws IOException {
+        LogGenerator generator = new LogGenerator(seed);
+        generator.setMix(20,20,20);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.write(out,lines);
+        return new String(out.toByteArray(),StandardCharsets.UTF_8);
+    }
+
+    /** The same seed makes the same log, and the last stack trace is cut off to get the line count right. */
+    @Test
+    void sameSeed() throws IOException {
+        final String log = make(1,1000);
+        assertEquals(log,make(1,1000));
+        assertNotEquals(log,make(2,1000));
+        assertEquals(1000,log.split("\n",-1).length-1);
+        assertTrue(log.endsWith("\n"));
+    }
+
+    @Test
+    void kinds() throws IOException {
+        final String log = make(1,1000);
+        assertTrue(log.contains("\n\tat com.example."));
+        assertTrue(log.contains(" {\"level\":\""));
+        assertTrue(log.chars().anyMatch(c -> c > 0x7F));
+        final String first = log.substring(0,log.indexOf('\n'));
+        assertNotEquals(Timestamps.NO_TIME,Timestamps.parse(first),first);
+    }
+
+    /** JSON lines start with a timestamp too, so they are entries of their own and not part of the one above. */
+    @Test
+    void jsonTimestamps() throws IOException {
+        for(String line : make(1,1000).split("\n")) {
+            if(line.contains("{\"level\"")) {
+                assertNotEquals(Timestamps.NO_TIME,Timestamps.parse(line),line);
+            }
+        }
+    }
+
+    @Test
+    void messageLength() throws IOException {
+        LogGenerator generator = new LogGenerator(1);
+        generator.setMix(0,0,0);
+        generator.setMessageLength(100,100);
+        StringBuilder entry = new StringBuilder();
+        generator.nextEntry(entry);
+        final int message = entry.indexOf(" - ")+3;
+        final int length = entry.length()-1-message;
+        assertTrue(length >= 100 && length < 120,entry.toString());
+    }
+
+    @Test
+    void rotate() throws IOException, InterruptedException {
+        File folder = Files.createTempDirectory("garfield").toFile();
+        File f = new File(folder,"app.log");
+        new LogGenerator(1).write(f,2000,0,16384);
+        File first = new File(folder,"app.log.1");
+        assertTrue(first.exists());
+        assertTrue(first.length() >= 16384 && first.length() < 32768);
+        assertTrue(f.length() < 16384);
+        File[] files = folder.listFiles();
+        assertNotNull(files);
+        assertEquals(6,files.length);   //app.log and 5 old ones
+        for(File file : files) {
+            assertTrue(file.delete());
+        }
+        assertTrue(folder.delete());
+    }
+}
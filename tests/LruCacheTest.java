@@ -0,0 +1,33 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LruCacheTest {
+
+    /** Getting a value counts as using it, so the one dropped is the one used longest ago. */
+    @Test
+    void leastRecentlyUsed() {
+        LruCache<String> cache = new LruCache<>(2);
+        cache.put(1,"one");
+        cache.put(2,"two");
+        assertEquals("one",cache.get(1));
+        cache.put(3,"three");
+        assertEquals(2,cache.size());
+        assertNull(cache.get(2));
+        assertEquals("one",cache.get(1));
+        assertEquals("three",cache.get(3));
+    }
+
+    @Test
+    void forget() {
+        LruCache<String> cache = new LruCache<>(10);
+        cache.put(1,"one");
+        cache.put(5,"five");
+        cache.put(9,"nine");
+        cache.forget(5);
+        assertEquals(1,cache.size());
+        assertEquals("one",cache.get(1));
+        cache.clear();
+        assertEquals(0,cache.size());
+    }
+}
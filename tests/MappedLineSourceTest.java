@@ -0,0 +1,178 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedLineSourceTest {
+
+    private File makeFile(String contents) throws IOException {
+        File f = File.createTempFile("garfield",".log");
+        f.deleteOnExit();
+        append(f,contents);
+        return f;
+    }
+
+    private void append(File f,String contents) throws IOException {
+        try(FileOutputStream out = new FileOutputStream(f,true)) {
+            out.write(contents.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void empty() throws IOException {
+        try(MappedLineSource src = new MappedLineSource(makeFile(""),StandardCharsets.UTF_8)) {
+            assertEquals(0,src.lineCount());
+            assertEquals(0,src.maxLineLength());
+        }
+    }
+
+    @Test
+    void lines() throws IOException {
+        try(MappedLineSource src = new MappedLineSource(makeFile("one\ntwo\n\nfour"),StandardCharsets.UTF_8)) {
+            assertEquals(4,src.lineCount());
+            assertEquals("one",src.getLine(0));
+            assertEquals("two",src.getLine(1));
+            assertEquals("",src.getLine(2));
+            assertEquals("four",src.getLine(3));
+            assertEquals(4,src.maxLineLength());
+        }
+    }
+
+    /** A trailing newline doesn't make an extra empty line, same as readLine(). */
+    @Test
+    void trailingNewline() throws IOException {
+        try(MappedLineSource src = new MappedLineSource(makeFile("one\ntwo\n"),StandardCharsets.UTF_8)) {
+            assertEquals(2,src.lineCount());
+            assertEquals("two",src.getLine(1));
+        }
+    }
+
+    @Test
+    void carriageReturn() throws IOException {
+        try(MappedLineSource src = new MappedLineSource(makeFile("one\r\ntwo\r\n"),StandardCharsets.UTF_8)) {
+            assertEquals(2,src.lineCount());
+            assertEquals("one",src.getLine(0));
+            assertEquals("two",src.getLine(1));
+        }
+    }
+
+    @Test
+    void unicode() throws IOException {
+        try(MappedLineSource src = new MappedLineSource(makeFile("caf\u00e9\n\u65e5\u672c"),StandardCharsets.UTF_8)) {
+            assertEquals("caf\u00e9",src.getLine(0));
+            assertEquals("\u65e5\u672c",src.getLine(1));
+        }
+    }
+
+    @Test
+    void outOfRange() throws IOException {
+        try(MappedLineSource src = new MappedLineSource(makeFile("one\n"),StandardCharsets.UTF_8)) {
+            assertThrows(IndexOutOfBoundsException.class,() -> src.getLine(1));
+        }
+    }
+
+    @Test
+    void update() throws IOException {
+        File f = makeFile("one\n");
+        try(MappedLineSource src = new MappedLineSource(f,StandardCharsets.UTF_8)) {
+            assertFalse(src.update());
+            append(f,"two\nthree\n");
+            assertTrue(src.update());
+            assertEquals(3,src.lineCount());
+            assertEquals("three",src.getLine(2));
+            assertEquals(5,src.maxLineLength());
+        }
+    }
+
+    /** The last line didn't have a newline yet, so the appended text belongs to it. */
+    @Test
+    void updatePartialLine() throws IOException {
+        File f = makeFile("one\ntw");
+        try(MappedLineSource src = new MappedLineSource(f,StandardCharsets.UTF_8)) {
+            assertEquals(2,src.lineCount());
+            assertEquals("tw",src.getLine(1));
+            append(f,"o\nthree");
+            assertTrue(src.update());
+            assertEquals(3,src.lineCount());
+            assertEquals("two",src.getLine(1));
+            assertEquals("three",src.getLine(2));
+            assertEquals(f.length(),src.sizeBytes());
+        }
+    }
+
+    /** Only maxBytes are read at a time, the line cut off at the end is finished by the next update. */
+    @Test
+    void updateLimited() throws IOException {
+        File f = makeFile("one\n");
+        try(MappedLineSource src = new MappedLineSource(f,StandardCharsets.UTF_8)) {
+            append(f,"two\nthree\n");
+            assertTrue(src.update(6));
+            assertEquals(10,src.sizeBytes());
+            assertEquals(3,src.lineCount());
+            assertEquals("th",src.getLine(2));
+            assertTrue(src.update(6));
+            assertEquals(3,src.lineCount());
+            assertEquals("three",src.getLine(2));
+            assertEquals(f.length(),src.sizeBytes());
+            assertFalse(src.update(6));
+        }
+    }
+
+    @Test
+    void truncated() throws IOException {
+        File f = makeFile("one\ntwo\n");
+        try(MappedLineSource src = new MappedLineSource(f,StandardCharsets.UTF_8)) {
+            append(f,"three\n");
+            assertFalse(src.isTruncated());
+            try(RandomAccessFile out = new RandomAccessFile(f,"rw")) {
+                out.setLength(4);
+            }
+            assertTrue(src.isTruncated());
+            assertFalse(src.update());
+        }
+    }
+
+    /** Emptied and written again past where it was, so it's bigger, but the lines already indexed are gone. */
+    @Test
+    void truncatedAndGrown() throws IOException {
+        File f = makeFile("one\ntwo\n");
+        try(MappedLineSource src = new MappedLineSource(f,StandardCharsets.UTF_8)) {
+            try(FileOutputStream out = new FileOutputStream(f)) {
+                out.write("uno\ndos\ntres\n".getBytes(StandardCharsets.UTF_8));
+            }
+            assertTrue(src.isTruncated());
+            assertFalse(src.update());
+            assertEquals(2,src.lineCount());
+        }
+    }
+
+    /** Big enough to be scanned in several chunks, with lines crossing from one chunk to the next. */
+    @Test
+    void chunks() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        int lines = 0;
+        while(contents.length() < 10_000_000) {
+            contents.append("line ").append(lines++).append(lines%1000 == 0 ? "\r\n" : "\n");
+        }
+        contents.append(new String(new char[5_000_000]).replace('\0','x')).append("\nlast");
+        File f = makeFile(contents.toString());
+        try(MappedLineSource src = new MappedLineSource(f,StandardCharsets.UTF_8)) {
+            assertEquals(lines+2,src.lineCount());
+            assertEquals("line 0",src.getLine(0));
+            assertEquals("line 998",src.getLine(998));
+            assertEquals("line 999",src.getLine(999));
+            assertEquals("line "+(lines-1),src.getLine(lines-1));
+            assertEquals("last",src.getLine(lines+1));
+            assertEquals(5_000_000,src.maxLineLength());
+            append(f,"\nmore");
+            assertTrue(src.update());
+            assertEquals("last",src.getLine(lines+1));
+            assertEquals("more",src.getLine(lines+2));
+        }
+    }
+}
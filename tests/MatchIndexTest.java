@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchIndexTest {
+
+    private MatchIndex makeIndex(int... lines) {
+        MatchIndex index = new MatchIndex();
+        for(int line : lines) {
+            index.add(line);
+        }
+        return index;
+    }
+
+    @Test
+    void empty() {
+        MatchIndex index = new MatchIndex();
+        assertEquals(0,index.size());
+        assertEquals(-1,index.next(0));
+        assertEquals(-1,index.prev(10));
+        assertEquals(-1,index.indexOf(0));
+    }
+
+    @Test
+    void next() {
+        MatchIndex index = makeIndex(2,5,9);
+        assertEquals(2,index.next(0));
+        assertEquals(5,index.next(2));
+        assertEquals(5,index.next(3));
+        assertEquals(-1,index.next(9));
+    }
+
+    @Test
+    void prev() {
+        MatchIndex index = makeIndex(2,5,9);
+        assertEquals(9,index.prev(20));
+        assertEquals(5,index.prev(9));
+        assertEquals(2,index.prev(5));
+        assertEquals(-1,index.prev(2));
+    }
+
+    @Test
+    void indexOf() {
+        MatchIndex index = makeIndex(2,5,9);
+        assertEquals(0,index.indexOf(2));
+        assertEquals(2,index.indexOf(9));
+        assertEquals(-1,index.indexOf(6));
+    }
+
+    /** Adding a line that isn't after the last one is ignored, so the index stays sorted. */
+    @Test
+    void addOutOfOrder() {
+        MatchIndex index = makeIndex(2,5,5,3);
+        assertEquals(2,index.size());
+    }
+
+    @Test
+    void removeFrom() {
+        MatchIndex index = makeIndex(2,5,9);
+        index.removeFrom(5);
+        assertEquals(1,index.size());
+        index.add(6);
+        assertEquals(6,index.next(2));
+    }
+}
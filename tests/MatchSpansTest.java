@@ -0,0 +1,44 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchSpansTest {
+
+    @Test
+    void literal() {
+        MatchSpans spans = new MatchSpans(new SearchEngine("err",false,true));
+        assertArrayEquals(new int[] {0,3,10,13},spans.get(0,"Error and error"));
+        assertArrayEquals(new int[] {},spans.get(1,"nothing"));
+    }
+
+    @Test
+    void regex() {
+        MatchSpans spans = new MatchSpans(new SearchEngine("\\d+",true,false));
+        assertArrayEquals(new int[] {5,7,11,14},spans.get(0,"took 12 ms 345"));
+        //empty matches aren't highlighted
+        assertArrayEquals(new int[] {},new MatchSpans(new SearchEngine("x*",true,false)).get(0,"abc"));
+    }
+
+    /** Drawn lines are remembered, so the search doesn't run again when scrolling back. */
+    @Test
+    void cached() {
+        MatchSpans spans = new MatchSpans(new SearchEngine("a",false,false));
+        final int[] first = spans.get(5,"a b a");
+        assertSame(first,spans.get(5,"a b a"));
+        for(int i = 0; i < 10000; i++) {
+            spans.get(i+100,"abc");
+        }
+        assertTrue(spans.size() <= 512);
+        assertNotSame(first,spans.get(5,"a b a"));
+    }
+
+    @Test
+    void forget() {
+        MatchSpans spans = new MatchSpans(new SearchEngine("a",false,false));
+        spans.get(1,"a");
+        spans.get(2,"a");
+        spans.forget(2);
+        assertEquals(1,spans.size());
+        assertArrayEquals(new int[] {0,1,1,2},spans.get(2,"aa"));
+    }
+}
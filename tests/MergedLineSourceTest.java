@@ -0,0 +1,195 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergedLineSourceTest {
+
+    /** Lines kept in a list, added to with append() and picked up by update(). */
+    private static class ListSource implements LineSource {
+        private final List<String> lines = new ArrayList<>();
+        private final List<String> pending = new ArrayList<>();
+        private String finished;
+
+        ListSource(String... lines) {
+            this.lines.addAll(Arrays.asList(lines));
+        }
+
+        void append(String... lines) {
+            pending.addAll(Arrays.asList(lines));
+        }
+
+        /** The last line was only partly written, the rest of it is picked up by update(). */
+        void finishLast(String line) {
+            finished = line;
+        }
+
+        @Override public int lineCount() { return lines.size(); }
+        @Override public String getLine(int lineNum) { return lines.get(lineNum); }
+        @Override public int maxLineLength() { return 0; }
+        @Override public long sizeBytes() { return 0; }
+        @Override public void close() { }
+
+        @Override
+        public boolean update() {
+            final boolean grew = !pending.isEmpty() || finished != null;
+            if(finished != null) {
+                lines.set(lines.size()-1,finished);
+                finished = null;
+            }
+            lines.addAll(pending);
+            pending.clear();
+            return grew;
+        }
+    }
+
+    private static String at(int second,String text) {
+        return String.format("2018-12-24 14:32:%02d.000 %s",second,text);
+    }
+
+    private List<String> all(LineSource src) {
+        List<String> lines = new ArrayList<>();
+        for(int i = 0; i < src.lineCount(); i++) {
+            lines.add(src.getLine(i));
+        }
+        return lines;
+    }
+
+    @Test
+    void interleaved() {
+        ListSource a = new ListSource(at(1,"a1"),at(4,"a4"));
+        ListSource b = new ListSource(at(2,"b2"),at(3,"b3"),at(5,"b5"));
+        MergedLineSource src = new MergedLineSource(new LineSource[] {a,b},new String[] {"a","b"});
+        assertEquals(5,src.lineCount());
+        assertEquals(Arrays.asList(at(1,"a1"),at(2,"b2"),at(3,"b3"),at(4,"a4"),at(5,"b5")),all(src));
+        assertEquals(0,src.sourceOf(0));
+        assertEquals(1,src.sourceOf(2));
+        assertEquals("b",src.sourceName(src.sourceOf(4)));
+    }
+
+    /** Lines without a timestamp stay with the entry above them. */
+    @Test
+    void continuationLines() {
+        ListSource a = new ListSource(at(1,"a1"),"\tat Foo.bar","\tat Foo.main",at(3,"a3"));
+        ListSource b = new ListSource(at(2,"b2"));
+        MergedLineSource src = new MergedLineSource(new LineSource[] {a,b},new String[] {"a","b"});
+        assertEquals(Arrays.asList(at(1,"a1"),"\tat Foo.bar","\tat Foo.main",at(2,"b2"),at(3,"a3")),all(src));
+    }
+
+    /** Same time, the first file wins. */
+    @Test
+    void ties() {
+        ListSource a = new ListSource(at(1,"a"));
+        ListSource b = new ListSource(at(1,"b"));
+        MergedLineSource src = new MergedLineSource(new LineSource[] {b,a},new String[] {"b","a"});
+        assertEquals(Arrays.asList(at(1,"b"),at(1,"a")),all(src));
+    }
+
+    /** New lines go after what was merged, even if one of them is earlier. */
+    @Test
+    void update() throws IOException {
+        ListSource a = new ListSource(at(1,"a1"));
+        ListSource b = new ListSource(at(2,"b2"));
+        MergedLineSource src = new MergedLineSource(new LineSource[] {a,b},new String[] {"a","b"});
+        assertEquals(at(2,"b2"),src.getLine(1));
+        assertFalse(src.update());
+        a.append(at(4,"a4"));
+        b.append(at(3,"b3"));
+        assertTrue(src.update());
+        assertEquals(Arrays.asList(at(1,"a1"),at(2,"b2"),at(3,"b3"),at(4,"a4")),all(src));
+        a.append(at(0,"a0"));
+        assertTrue(src.update());
+        assertEquals(at(0,"a0"),src.getLine(4));
+    }
+
+    /** The limit is for all the files together, with each call starting on the next file. */
+    @Test
+    void updateLimited() throws IOException {
+        File a = File.createTempFile("garfield",".log");
+        File b = File.createTempFile("garfield",".log");
+        a.deleteOnExit();
+        b.deleteOnExit();
+        try(MergedLineSource src = new MergedLineSource(new LineSource[] {new MappedLineSource(a),
+                new MappedLineSource(b)},new String[] {"a","b"})) {
+            Files.write(a.toPath(),(at(1,"one")+"\n").getBytes(StandardCharsets.UTF_8));
+            Files.write(b.toPath(),(at(2,"two")+"\n").getBytes(StandardCharsets.UTF_8));
+            final long lineBytes = a.length();
+            assertTrue(src.update(lineBytes));
+            assertEquals(lineBytes,src.sizeBytes());
+            assertTrue(src.update(lineBytes));
+            assertEquals(lineBytes*2,src.sizeBytes());
+            assertEquals(Arrays.asList(at(1,"one"),at(2,"two")),all(src));
+        }
+    }
+
+    @Test
+    void outOfRange() {
+        MergedLineSource src = new MergedLineSource(new LineSource[] {new ListSource(at(1,"a"))},new String[] {"a"});
+        assertThrows(IndexOutOfBoundsException.class,() -> src.getLine(1));
+    }
+
+    /** A file's last line was merged before it was finished, so the merged lines changed from there on. */
+    @Test
+    void partialLastLine() throws IOException {
+        ListSource a = new ListSource(at(1,"a1"),"2018-12-24 14:3");
+        ListSource b = new ListSource(at(2,"b2"),at(3,"b3"));
+        MergedLineSource src = new MergedLineSource(new LineSource[] {a,b},new String[] {"a","b"});
+        assertEquals(Arrays.asList(at(1,"a1"),"2018-12-24 14:3",at(2,"b2"),at(3,"b3")),all(src));
+        assertEquals(Integer.MAX_VALUE,src.takeFirstChanged());
+        a.finishLast(at(4,"a4"));
+        b.append(at(5,"b5"));
+        assertTrue(src.update());
+        assertEquals(1,src.takeFirstChanged());
+        assertEquals(Integer.MAX_VALUE,src.takeFirstChanged());
+        assertEquals(Arrays.asList(at(1,"a1"),at(4,"a4"),at(2,"b2"),at(3,"b3"),at(5,"b5")),all(src));
+        //a file that grew can't say if its last line was extended, so that line counts as changed
+        b.append("2018-12-24 14:3");
+        assertTrue(src.update());
+        assertEquals(4,src.takeFirstChanged());
+        //not merged yet, so nothing that was shown changed
+        b.finishLast(at(6,"b6"));
+        assertTrue(src.update());
+        assertEquals(Integer.MAX_VALUE,src.takeFirstChanged());
+    }
+
+    /** Lines merged already are read without the lock, from several threads at once. */
+    @Test
+    void concurrentReads() throws InterruptedException {
+        ListSource a = new ListSource();
+        ListSource b = new ListSource();
+        for(int i = 0; i < 20000; i++) {
+            a.lines.add(at(i%60,"a"+i));
+            b.lines.add(at(i%60,"b"+i));
+        }
+        MergedLineSource src = new MergedLineSource(new LineSource[] {a,b},new String[] {"a","b"});
+        final List<String> expected = all(new MergedLineSource(new LineSource[] {a,b},new String[] {"a","b"}));
+        final List<Throwable> errors = new ArrayList<>();
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    for(int i = offset; i < expected.size(); i += threads.length) {
+                        assertEquals(expected.get(i),src.getLine(i));
+                    }
+                } catch(Throwable e) {
+                    synchronized(errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(new ArrayList<Throwable>(),errors);
+    }
+}
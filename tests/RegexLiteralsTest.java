@@ -0,0 +1,42 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegexLiteralsTest {
+
+    @Test
+    void plainText() {
+        assertEquals("error",RegexLiterals.required("error"));
+        assertEquals("timeout",RegexLiterals.required("error.*timeout"));
+        assertEquals(" failed",RegexLiterals.required("user=\\d+ failed"));
+        assertEquals("user=",RegexLiterals.required("^user=\\d+$"));
+    }
+
+    @Test
+    void quantifiers() {
+        assertEquals("error",RegexLiterals.required("errors?"));
+        assertEquals("abc",RegexLiterals.required("abcd*"));
+        assertEquals("abcd",RegexLiterals.required("abcd+x"));
+        assertEquals("ab",RegexLiterals.required("abc{0,2}"));
+        assertEquals("ab",RegexLiterals.required("abc*?d"));
+        assertEquals("(Foo.java:",RegexLiterals.required("\\(Foo\\.java:\\d+\\)"));
+    }
+
+    @Test
+    void groupsAndClasses() {
+        assertEquals(" timeout",RegexLiterals.required("(error|warn) timeout"));
+        assertEquals(" at ",RegexLiterals.required("[a-z]+ at [)\\]]"));
+        assertEquals("after",RegexLiterals.required("(?:x(y)z)?after"));
+        assertEquals("a.b",RegexLiterals.required("\\Qa.b\\E"));
+    }
+
+    @Test
+    void nothingRequired() {
+        assertNull(RegexLiterals.required("error|warn"));
+        assertNull(RegexLiterals.required("\\d+"));
+        assertNull(RegexLiterals.required("."));
+        assertNull(RegexLiterals.required("(?i)error"));
+        assertNull(RegexLiterals.required("\\x41BC"));
+        assertNull(RegexLiterals.required("(a)\\1"));
+    }
+}
@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScreenBufferTest {
+
+    private ScreenBuffer makeScreen(HeadlessTerminal terminal) {
+        ScreenBuffer screen = new ScreenBuffer(terminal);
+        screen.initscr();
+        screen.updateSize();
+        return screen;
+    }
+
+    @Test
+    void print() {
+        HeadlessTerminal terminal = new HeadlessTerminal(10,3);
+        ScreenBuffer screen = makeScreen(terminal);
+        screen.move(2,1);
+        screen.attron(3);
+        screen.printw("abc");
+        screen.attroff(3);
+        screen.refresh();
+        assertEquals("  abc     ",terminal.getLine(1));
+        assertEquals(3,terminal.getPair(2,1));
+        assertEquals(0,terminal.getPair(5,1));
+    }
+
+    /** Nothing changed, so nothing is sent. */
+    @Test
+    void idleFrame() {
+        HeadlessTerminal terminal = new HeadlessTerminal(10,3);
+        ScreenBuffer screen = makeScreen(terminal);
+        screen.move(0,0);
+        screen.printw("hello");
+        screen.refresh();
+        terminal.resetCallCount();
+
+        screen.move(0,0);
+        screen.printw("hello");
+        screen.refresh();
+        assertEquals(0,terminal.getCallCount());
+    }
+
+    /** Only the changed characters are sent, in one printw. */
+    @Test
+    void changedRun() {
+        HeadlessTerminal terminal = new HeadlessTerminal(10,3);
+        ScreenBuffer screen = makeScreen(terminal);
+        screen.move(0,0);
+        screen.printw("hello");
+        screen.refresh();
+        terminal.resetCallCount();
+
+        screen.move(0,0);
+        screen.printw("heLLo");
+        screen.refresh();
+        assertEquals("heLLo     ",terminal.getLine(0));
+        assertEquals(4,terminal.getCallCount());  //move, printw "LL", move cursor back, refresh
+    }
+
+    @Test
+    void newlineAndTab() {
+        HeadlessTerminal terminal = new HeadlessTerminal(10,3);
+        ScreenBuffer screen = makeScreen(terminal);
+        screen.move(0,0);
+        screen.printw("abcdef");
+        screen.move(0,0);
+        screen.printw("x\n\ty");
+        screen.refresh();
+        assertEquals("x         ",terminal.getLine(0));
+        assertEquals("        y ",terminal.getLine(1));
+    }
+
+    @Test
+    void clear() {
+        HeadlessTerminal terminal = new HeadlessTerminal(10,3);
+        ScreenBuffer screen = makeScreen(terminal);
+        screen.printw("abc");
+        screen.refresh();
+        screen.clear();
+        screen.refresh();
+        assertEquals("          ",terminal.getLine(0));
+    }
+}
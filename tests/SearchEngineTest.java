@@ -0,0 +1,128 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchEngineTest {
+
+    /** Every 7th line has an ERROR in it, enough lines that the search gets split into several chunks. */
+    private MappedLineSource makeLines(int count) throws IOException {
+        File f = File.createTempFile("garfield",".log");
+        f.deleteOnExit();
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < count; i++) {
+            sb.append(i).append(i%7 == 0 ? " Error timeout\n" : " info ok\n");
+        }
+        try(FileOutputStream out = new FileOutputStream(f)) {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return new MappedLineSource(f,StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void matchesLiteral() {
+        assertTrue (new SearchEngine("ERROR",false,true).matches("an error here"));
+        assertFalse(new SearchEngine("ERROR",false,false).matches("an error here"));
+        assertTrue (new SearchEngine("error",false,false).matches("an error here"));
+    }
+
+    @Test
+    void matchesRegex() {
+        assertTrue (new SearchEngine("ERR.*TIME",true,true).matches("error: timeout"));
+        assertFalse(new SearchEngine("ERR.*TIME",true,false).matches("error: timeout"));
+        assertTrue (new SearchEngine("^\\d+ ",true,false).matches("12 abc"));
+    }
+
+    @Test
+    void badRegex() {
+        assertThrows(PatternSyntaxException.class,() -> new SearchEngine("(abc",true,true));
+    }
+
+    @Test
+    void searchInOrder() throws IOException {
+        final int count = 50000;
+        try(MappedLineSource lines = makeLines(count)) {
+            IntList hits = new SearchEngine("error",false,true).search(lines,0,count);
+            assertEquals((count+6)/7,hits.size());
+            for(int i = 0; i < hits.size(); i++) {
+                assertEquals(i*7,hits.get(i));
+            }
+        }
+    }
+
+    @Test
+    void searchFromLine() throws IOException {
+        try(MappedLineSource lines = makeLines(100)) {
+            IntList hits = new SearchEngine("err.*out",true,true).search(lines,50,100);
+            assertEquals(56,hits.get(0));
+            assertEquals(98,hits.get(hits.size()-1));
+        }
+    }
+
+    /** Skipping lines without the required text has to find the same lines as running the expression on each. */
+    @Test
+    void regexPrefilter() {
+        final String[] lines = {
+                "ERROR connection timeout",
+                "error: read timeout",
+                "warn timeout",
+                "user=12 failed",
+                "user= failed",
+                "\u0130D timeout",     //lower cases to i and a combining dot
+                "error but no time out",
+        };
+        final String[] queries = {"error.*timeout","user=\\d+ failed","id timeout","(error|warn) timeout","t.me"};
+        for(String query : queries) {
+            for(boolean ignoreCase : new boolean[] {false,true}) {
+                final SearchEngine engine = new SearchEngine(query,true,ignoreCase);
+                final java.util.regex.Pattern plain = java.util.regex.Pattern.compile(ignoreCase ? query.toLowerCase() : query);
+                for(String line : lines) {
+                    final boolean expected = plain.matcher(ignoreCase ? line.toLowerCase() : line).find();
+                    assertEquals(expected,engine.matches(line),query+" "+ignoreCase+" "+line);
+                }
+            }
+        }
+    }
+
+    @Test
+    void searchRegexWithPrefilter() throws IOException {
+        try(MappedLineSource lines = makeLines(1000)) {
+            IntList hits = new SearchEngine("Error \\w+out",true,false).search(lines,0,1000);
+            assertEquals(143,hits.size());
+            assertEquals(7,hits.get(1));
+            assertEquals(0,new SearchEngine("error \\w+out",true,false).search(lines,0,1000).size());
+        }
+    }
+
+    /** A line that can't be read stops the job, and the error is kept instead of being thrown on its thread. */
+    @Test
+    void searchJobError() throws InterruptedException {
+        LineSource broken = new LineSource() {
+            @Override public int lineCount() { return 10; }
+            @Override public String getLine(int lineNum) {
+                if(lineNum == 5) {
+                    throw new UncheckedIOException(new IOException("Read failed"));
+                }
+                return "Error "+lineNum;
+            }
+            @Override public int maxLineLength() { return 8; }
+            @Override public long sizeBytes() { return 80; }
+            @Override public boolean update() { return false; }
+            @Override public void close() { }
+        };
+        SearchJob job = new SearchJob(new SearchEngine("Error",false,false),broken,0,10).start();
+        final long end = System.currentTimeMillis()+5000;
+        while(!job.isDone() && System.currentTimeMillis() < end) {
+            Thread.sleep(5);
+        }
+        assertTrue(job.isDone());
+        assertTrue(job.getError() instanceof UncheckedIOException);
+        assertEquals("Read failed",job.getError().getCause().getMessage());
+    }
+}
@@ -0,0 +1,128 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimestampIndexTest {
+
+    /** Lines kept in a list, which can be added to like a file that is being written. */
+    private static class ListLines implements LineSource {
+        final List<String> lines = new ArrayList<>();
+
+        ListLines(String... lines) {
+            this.lines.addAll(Arrays.asList(lines));
+        }
+
+        @Override public int lineCount() { return lines.size(); }
+        @Override public String getLine(int lineNum) { return lines.get(lineNum); }
+        @Override public int maxLineLength() { return 0; }
+        @Override public long sizeBytes() { return 0; }
+        @Override public boolean update() { return false; }
+        @Override public void close() { }
+    }
+
+    private static long time(String text) {
+        return Timestamps.parse("2018-12-24 "+text);
+    }
+
+    /** Checks the index and bisect() find the same line. */
+    private static void assertFinds(int expected,ListLines source,TimestampIndex index,long time) {
+        assertEquals(expected,index.find(time));
+        assertEquals(expected,TimestampIndex.bisect(source,time));
+    }
+
+    private static TimestampIndex indexOf(LineSource source) {
+        TimestampIndex index = new TimestampIndex();
+        index.update(source,0,source.lineCount());
+        return index;
+    }
+
+    /** Lines without a time belong to the entry above, so they are never found. */
+    @Test
+    void continuationLines() {
+        ListLines source = new ListLines(
+                "2018-12-24 10:00:00.000 INFO start",
+                "2018-12-24 10:00:01.000 ERROR failed",
+                "java.lang.IllegalStateException: boom",
+                "\tat Foo.bar(Foo.java:1)",
+                "2018-12-24 10:00:05.000 INFO recovered");
+        TimestampIndex index = indexOf(source);
+        assertEquals(3,index.size());
+        assertFinds(1,source,index,time("10:00:01"));
+        assertFinds(4,source,index,time("10:00:02"));
+        assertEquals(time("10:00:01"),TimestampIndex.timeAtOrBefore(source,3));
+        assertEquals(time("10:00:05"),TimestampIndex.timeAtOrAfter(source,2));
+    }
+
+    /** A run of untimed lines longer then bisect() looks past at once, like a huge stack trace. */
+    @Test
+    void longGap() {
+        ListLines source = new ListLines("2018-12-24 10:00:00.000 INFO start");
+        for(int i = 0; i < 5000; i++) {
+            source.lines.add("\tat Foo.bar(Foo.java:"+i+")");
+        }
+        source.lines.add("2018-12-24 10:00:05.000 INFO after");
+        source.lines.add("2018-12-24 10:00:06.000 INFO end");
+        TimestampIndex index = indexOf(source);
+        assertFinds(5001,source,index,time("10:00:01"));
+        assertFinds(5002,source,index,time("10:00:06"));
+        assertFinds(0,source,index,time("09:00"));
+        assertEquals(time("10:00:05"),TimestampIndex.timeAtOrAfter(source,4500));
+        assertEquals(Timestamps.NO_TIME,TimestampIndex.timeAtOrAfter(source,1));    //too far to look
+    }
+
+    @Test
+    void beforeFirstAndAfterLast() {
+        ListLines source = new ListLines(
+                "starting up",
+                "2018-12-24 10:00:00.000 INFO first",
+                "2018-12-24 10:00:01.000 INFO last",
+                "shutting down");
+        TimestampIndex index = indexOf(source);
+        assertFinds(1,source,index,time("09:59:59"));
+        assertFinds(-1,source,index,time("10:00:02"));
+        assertEquals(Timestamps.NO_TIME,TimestampIndex.timeAtOrBefore(source,0));
+        assertEquals(Timestamps.NO_TIME,TimestampIndex.timeAtOrAfter(source,3));
+    }
+
+    /** Several lines logged in the same millisecond, the first of them is found. */
+    @Test
+    void equalTimes() {
+        ListLines source = new ListLines("2018-12-24 10:00:00.000 INFO a");
+        for(int i = 0; i < 50; i++) {
+            source.lines.add("2018-12-24 10:00:01.000 INFO same "+i);
+        }
+        source.lines.add("2018-12-24 10:00:02.000 INFO b");
+        TimestampIndex index = indexOf(source);
+        assertFinds(1,source,index,time("10:00:01"));
+        assertFinds(1,source,index,time("10:00:00.500"));
+        assertFinds(51,source,index,time("10:00:01.001"));
+    }
+
+    /** The last line was only partly written, so it's indexed again from there when more arrives. */
+    @Test
+    void updatePartialLine() {
+        ListLines source = new ListLines(
+                "2018-12-24 10:00:00.000 INFO a",
+                "2018-12-24 10:0");
+        TimestampIndex index = indexOf(source);
+        assertEquals(1,index.size());
+        source.lines.set(1,"2018-12-24 10:00:01.000 INFO b");
+        source.lines.add("2018-12-24 10:00:02.000 INFO c");
+        index.update(source,1,source.lineCount());
+        assertEquals(3,index.size());
+        assertFinds(1,source,index,time("10:00:01"));
+
+        //a line that had a time, but not all of it
+        source.lines.add("2018-12-24 10:00:03");
+        index.update(source,3,source.lineCount());
+        source.lines.set(3,"2018-12-24 10:00:03.900 INFO d");
+        index.update(source,3,source.lineCount());
+        assertEquals(4,index.size());
+        assertFinds(3,source,index,time("10:00:03.500"));
+        assertFinds(-1,source,index,time("10:00:04"));
+    }
+}
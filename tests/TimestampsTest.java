@@ -0,0 +1,38 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimestampsTest {
+
+    @Test
+    void parse() {
+        assertEquals(20181224143205250L,Timestamps.parse("2018-12-24 14:32:05.250 INFO hello"));
+        assertEquals(20181224143205000L,Timestamps.parse("2018/12/24 14:32:05 INFO hello"));
+        assertEquals(20181224143205005L,Timestamps.parse("2018-12-24 14:32:05.5"));    //"S" is milliseconds
+        assertEquals(20181224143205123L,Timestamps.parse("2018-12-24 14:32:05,123456"));
+    }
+
+    @Test
+    void parseNoTime() {
+        assertEquals(Timestamps.NO_TIME,Timestamps.parse(""));
+        assertEquals(Timestamps.NO_TIME,Timestamps.parse("\tat Foo.bar(Foo.java:1)"));
+        assertEquals(Timestamps.NO_TIME,Timestamps.parse("2018-13-24 14:32:05 bad month"));
+        assertEquals(Timestamps.NO_TIME,Timestamps.parse("2018-12-24T14:32:05"));
+    }
+
+    @Test
+    void parseInput() {
+        final long reference = Timestamps.parse("2018-12-24 09:00:00.0");
+        assertEquals(20181224143200000L,Timestamps.parseInput("14:32",reference));
+        assertEquals(20181224143205000L,Timestamps.parseInput(" 14:32:05 ",reference));
+        assertEquals(20181225010000000L,Timestamps.parseInput("2018-12-25 01:00",reference));
+        assertEquals(20181225000000000L,Timestamps.parseInput("2018-12-25",reference));
+        assertEquals(Timestamps.NO_TIME,Timestamps.parseInput("14:32",Timestamps.NO_TIME));
+        assertEquals(Timestamps.NO_TIME,Timestamps.parseInput("noon",reference));
+    }
+
+    @Test
+    void format() {
+        assertEquals("2018-12-24 14:32:05.250",Timestamps.format(20181224143205250L));
+    }
+}
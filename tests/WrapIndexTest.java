@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WrapIndexTest {
+
+    @Test
+    void fits() {
+        assertArrayEquals(new int[] {0},WrapIndex.wrap("",10));
+        assertArrayEquals(new int[] {0},WrapIndex.wrap("0123456789",10));
+    }
+
+    /** Breaks after the last space that fits, the space stays at the end of the row. */
+    @Test
+    void words() {
+        assertArrayEquals(new int[] {0,6,12},WrapIndex.wrap("hello world again",10));
+        assertArrayEquals(new int[] {0,10},WrapIndex.wrap("aaaa bbbb cccc",10));
+    }
+
+    /** A word longer then a row is cut where the row ends. */
+    @Test
+    void longWord() {
+        assertArrayEquals(new int[] {0,4,8},WrapIndex.wrap("abcdefghij",4));
+        assertArrayEquals(new int[] {0,3,7,11},WrapIndex.wrap("ab abcdefghij",4));
+    }
+
+    /** Tabs and control characters take up more then one column on the screen. */
+    @Test
+    void wideCharacters() {
+        assertArrayEquals(new int[] {0,2},WrapIndex.wrap("ab\tc",9));
+        assertArrayEquals(new int[] {0,4},WrapIndex.wrap("abc\u0001d",5));
+        //a tab wider then the row still gets a row to itself
+        assertArrayEquals(new int[] {0,1,2},WrapIndex.wrap("a\tb",4));
+    }
+
+    /** Lines are only wrapped when asked for, then remembered until they change. */
+    @Test
+    void lazy() {
+        final AtomicInteger reads = new AtomicInteger();
+        final WrapIndex index = new WrapIndex(lineNum -> {
+            reads.incrementAndGet();
+            return lineNum == 3 ? "one two three" : "x";
+        },5);
+        assertEquals(0,reads.get());
+        assertEquals(3,index.rowCount(3));
+        assertEquals(1,index.rowCount(2));
+        assertArrayEquals(new int[] {0,4,8},index.rowStarts(3));
+        assertEquals(2,reads.get());
+        index.forget(3);
+        assertEquals(3,index.rowCount(3));
+        assertEquals(1,index.rowCount(2));
+        assertEquals(3,reads.get());
+    }
+}